@@ -3,19 +3,26 @@ package org.vaadin.natale.components;
 import com.vaadin.data.ValueProvider;
 import com.vaadin.data.provider.DataProvider;
 import com.vaadin.data.provider.ListDataProvider;
+import com.vaadin.data.provider.Query;
+import com.vaadin.shared.Registration;
 import com.vaadin.ui.Grid;
+import com.vaadin.ui.components.grid.FooterRow;
 import org.apache.log4j.Logger;
+import org.vaadin.natale.dataprovider.AggregateFunction;
+import org.vaadin.natale.dataprovider.AggregatingDataProvider;
+import org.vaadin.natale.dataprovider.InMemoryAggregator;
+import org.vaadin.natale.util.PropertyAccessor;
 import org.vaadin.natale.util.PropertyNameFormatter;
 
 import javax.naming.SizeLimitExceededException;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
-import static org.vaadin.natale.util.ReflectionUtil.getPropertyValueByName;
-
 /**
  * A better typed version of the {@link Grid} component in Vaadin.<br>
  * Allows user manually add nested property as columns and simplify<br>
@@ -27,6 +34,16 @@ public class NGrid<T> extends Grid<T> {
 
 	private static final Logger logger = Logger.getLogger(NGrid.class);
 
+	// Aggregate functions by column id, shown in the aggregate footer row.
+	private final Map<String, AggregateFunction> columnAggregates = new LinkedHashMap<>();
+
+	private FooterRow aggregateFooterRow;
+
+	private Registration aggregateListenerRegistration;
+
+	// Set on data provider changes, aggregates are recomputed once before the next response to the client.
+	private boolean aggregatesChanged;
+
 	public NGrid(Class<T> beanClazz) {
 		super(beanClazz);
 	}
@@ -51,7 +68,8 @@ public class NGrid<T> extends Grid<T> {
 		removeAllColumns();
 
 		for (String propertyName : propertiesNames) {
-			addColumn((ValueProvider<T, Object>) t -> getPropertyValueByName(propertyName, t))
+			PropertyAccessor accessor = PropertyAccessor.of(propertyName);
+			addColumn((ValueProvider<T, Object>) accessor::getValue)
 					.setCaption(propertyNameFormatter.getConvertedPropertyName(propertyName))
 					.setId(propertyName);
 		}
@@ -146,6 +164,92 @@ public class NGrid<T> extends Grid<T> {
 		return this;
 	}
 
+	/**
+	 * Wrap current NGrid and show an aggregate of the column in the footer row.<br>
+	 * Column id has to be a property name. Aggregates are recomputed once before the next response
+	 * to the client, if data provider has changed, so filter changes are already applied to them.
+	 * If data provider is an {@link AggregatingDataProvider}, it computes the aggregate
+	 * (by a database query or incrementally in memory), otherwise all items of in-memory data provider are aggregated.
+	 *
+	 * @param columnId column id (property name).
+	 * @param function aggregate function.
+	 * @return current NGrid
+	 */
+	public NGrid<T> withColumnAggregate(String columnId, AggregateFunction function) {
+		if (getColumn(columnId) == null)
+			logColumnNotFoundError(columnId);
+
+		columnAggregates.put(columnId, function);
+		if (aggregateFooterRow == null)
+			aggregateFooterRow = appendFooterRow();
+		if (aggregateListenerRegistration == null)
+			registerAggregateListener();
+
+		markAggregatesChanged();
+		return this;
+	}
+
+	@Override
+	public void setDataProvider(DataProvider<T, ?> dataProvider) {
+		super.setDataProvider(dataProvider);
+
+		// Could be called by Grid constructor, before fields are initialized.
+		if (columnAggregates != null && !columnAggregates.isEmpty()) {
+			registerAggregateListener();
+			markAggregatesChanged();
+		}
+	}
+
+	@Override
+	public void beforeClientResponse(boolean initial) {
+		super.beforeClientResponse(initial);
+
+		if (aggregatesChanged) {
+			aggregatesChanged = false;
+			updateAggregates();
+		}
+	}
+
+	/**
+	 * Stream all rows of current NGrid to the output stream, using visible columns,
+	 * current filter of data provider and current sort order.
+	 *
+	 * @param format       export format.
+	 * @param outputStream stream to write to, it isn't closed.
+	 * @throws IOException if writing to the stream fails.
+	 * @see NGridExporter
+	 */
+	public void export(NGridExporter.Format format, OutputStream outputStream) throws IOException {
+		new NGridExporter<>(this).export(format, outputStream);
+	}
+
+	private void registerAggregateListener() {
+		if (aggregateListenerRegistration != null)
+			aggregateListenerRegistration.remove();
+		aggregateListenerRegistration = getDataProvider().addDataProviderListener(event -> markAggregatesChanged());
+	}
+
+	private void markAggregatesChanged() {
+		aggregatesChanged = true;
+		markAsDirty();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void updateAggregates() {
+		DataProvider<T, ?> dataProvider = getDataProvider();
+
+		columnAggregates.forEach((columnId, function) -> {
+			Object value = null;
+			if (dataProvider instanceof AggregatingDataProvider)
+				value = ((AggregatingDataProvider) dataProvider).getAggregate(columnId, function);
+			else if (dataProvider.isInMemory())
+				value = InMemoryAggregator.compute(((DataProvider<T, Object>) dataProvider).fetch(new Query<>()), columnId, function);
+
+			String caption = function.name().charAt(0) + function.name().substring(1).toLowerCase();
+			aggregateFooterRow.getCell(columnId).setText(value == null ? caption + ": -" : caption + ": " + value);
+		});
+	}
+
 	private void logColumnNotFoundError(String columnId) {
 		String errorMessage = "No column id [" + columnId + "] found in NGrid of class [" + getBeanType().getSimpleName() + "]";
 		logger.error(errorMessage);
@@ -0,0 +1,292 @@
+package org.vaadin.natale.components;
+
+import com.vaadin.data.provider.DataProvider;
+import com.vaadin.data.provider.GridSortOrder;
+import com.vaadin.data.provider.Query;
+import com.vaadin.data.provider.QuerySortOrder;
+import com.vaadin.server.SerializableComparator;
+import com.vaadin.ui.Grid;
+import org.vaadin.natale.dataprovider.StreamingDataProvider;
+import org.vaadin.natale.util.PropertyAccessor;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Streams rows of {@link NGrid} to an {@link OutputStream}.<br>
+ * Only visible columns are exported, in the grid order and with the grid captions.
+ * Rows are fetched from the grid data provider with its current filter and grid sort order,
+ * in chunks for backend providers, so memory usage doesn't depend on the number of rows.
+ * A {@link StreamingDataProvider} reads all rows in a single pass, bypassing its page cache.
+ * <p>
+ * Cell values are read by column value providers.
+ *
+ * @param <T> data type
+ */
+public class NGridExporter<T> {
+
+	public enum Format {
+		CSV,
+
+		// SpreadsheetML (XML Spreadsheet 2003), opened by Excel without additional libraries.
+		EXCEL_XML
+	}
+
+	private static final int DEFAULT_CHUNK_SIZE = 1000;
+
+	private final NGrid<T> grid;
+
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+	public NGridExporter(NGrid<T> grid) {
+		this.grid = grid;
+	}
+
+	/**
+	 * Set number of rows, fetched from backend data provider at once.
+	 *
+	 * @param chunkSize number of rows per fetch.
+	 * @return current NGridExporter
+	 */
+	public NGridExporter<T> withChunkSize(int chunkSize) {
+		if (chunkSize < 1)
+			throw new IllegalArgumentException("Chunk size must be positive, but chunkSize = " + chunkSize);
+
+		this.chunkSize = chunkSize;
+		return this;
+	}
+
+	/**
+	 * Write all rows of the grid to the output stream.<br>
+	 * The stream is flushed, but not closed.
+	 *
+	 * @param format       export format.
+	 * @param outputStream stream to write to.
+	 * @throws IOException if writing to the stream fails.
+	 */
+	public void export(Format format, OutputStream outputStream) throws IOException {
+		List<Grid.Column<T, ?>> columns = grid.getColumns().stream()
+				.filter(column -> !column.isHidden())
+				.collect(Collectors.toList());
+
+		List<String> captions = new ArrayList<>(columns.size());
+		List<Function<T, ?>> valueProviders = new ArrayList<>(columns.size());
+		for (Grid.Column<T, ?> column : columns) {
+			captions.add(column.getCaption());
+			valueProviders.add(getValueProvider(column));
+		}
+
+		Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+		RowWriter rowWriter = format == Format.CSV ? new CsvRowWriter(writer) : new ExcelXmlRowWriter(writer);
+
+		rowWriter.writeHeader(captions);
+		try {
+			forEachItem(item -> {
+				Object[] values = new Object[valueProviders.size()];
+				for (int i = 0; i < values.length; ++i)
+					values[i] = valueProviders.get(i).apply(item);
+
+				try {
+					rowWriter.writeRow(values);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		rowWriter.finish();
+		writer.flush();
+	}
+
+	// Value provider of the column is used, property of the column id is read only if there is none.
+	private static <T> Function<T, ?> getValueProvider(Grid.Column<T, ?> column) {
+		if (column.getValueProvider() != null)
+			return column.getValueProvider();
+		if (column.getId() == null)
+			return item -> null;
+
+		PropertyAccessor accessor = PropertyAccessor.of(column.getId());
+		return accessor::getValue;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void forEachItem(Consumer<T> action) {
+		DataProvider<T, Object> dataProvider = (DataProvider<T, Object>) grid.getDataProvider();
+
+		List<QuerySortOrder> sortOrders = new ArrayList<>();
+		Comparator<T> inMemorySorting = null;
+		for (GridSortOrder<T> order : grid.getSortOrder()) {
+			order.getSorted().getSortOrder(order.getDirection()).forEach(sortOrders::add);
+
+			SerializableComparator<T> comparator = order.getSorted().getComparator(order.getDirection());
+			inMemorySorting = inMemorySorting == null ? comparator : inMemorySorting.thenComparing(comparator);
+		}
+
+		if (dataProvider instanceof StreamingDataProvider) {
+			((StreamingDataProvider<T, Object>) dataProvider)
+					.forEachItem(new Query<>(0, Integer.MAX_VALUE, sortOrders, inMemorySorting, null), action);
+			return;
+		}
+
+		// In-memory provider holds all items anyway, while each fetch would filter and sort them again.
+		if (dataProvider.isInMemory()) {
+			dataProvider.fetch(new Query<>(0, Integer.MAX_VALUE, sortOrders, inMemorySorting, null)).forEach(action);
+			return;
+		}
+
+		// Providers may return less rows, than requested, so chunks are fetched until all rows are read.
+		int size = dataProvider.size(new Query<>());
+		int offset = 0;
+		int[] fetchedRows = new int[1];
+		do {
+			fetchedRows[0] = 0;
+			dataProvider.fetch(new Query<>(offset, chunkSize, sortOrders, inMemorySorting, null)).forEach(item -> {
+				action.accept(item);
+				fetchedRows[0]++;
+			});
+			offset += fetchedRows[0];
+		} while (fetchedRows[0] > 0 && offset < size);
+	}
+
+	private interface RowWriter {
+
+		void writeHeader(List<String> captions) throws IOException;
+
+		void writeRow(Object[] values) throws IOException;
+
+		void finish() throws IOException;
+	}
+
+	private static final class CsvRowWriter implements RowWriter {
+
+		private static final char SEPARATOR = ',';
+
+		// Leading characters, that make spreadsheet applications evaluate a text cell as a formula.
+		private static final String FORMULA_PREFIXES = "=+-@\t\r";
+
+		private final Writer writer;
+
+		private CsvRowWriter(Writer writer) {
+			this.writer = writer;
+		}
+
+		@Override
+		public void writeHeader(List<String> captions) throws IOException {
+			writeRow(captions.toArray());
+		}
+
+		@Override
+		public void writeRow(Object[] values) throws IOException {
+			for (int i = 0; i < values.length; ++i) {
+				if (i > 0)
+					writer.write(SEPARATOR);
+				if (values[i] instanceof Number)
+					writeValue(values[i].toString());
+				else if (values[i] != null)
+					writeValue(neutralizeFormula(values[i].toString()));
+			}
+			writer.write("\r\n");
+		}
+
+		@Override
+		public void finish() {
+		}
+
+		// Text cells, that look like formulas, are prefixed by an apostrophe, so they are displayed as text.
+		private static String neutralizeFormula(String value) {
+			return !value.isEmpty() && FORMULA_PREFIXES.indexOf(value.charAt(0)) >= 0 ? "'" + value : value;
+		}
+
+		private void writeValue(String value) throws IOException {
+			if (value.indexOf(SEPARATOR) < 0 && value.indexOf('"') < 0
+					&& value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+				writer.write(value);
+				return;
+			}
+
+			writer.write('"');
+			writer.write(value.replace("\"", "\"\""));
+			writer.write('"');
+		}
+	}
+
+	private static final class ExcelXmlRowWriter implements RowWriter {
+
+		private final Writer writer;
+
+		private ExcelXmlRowWriter(Writer writer) {
+			this.writer = writer;
+		}
+
+		@Override
+		public void writeHeader(List<String> captions) throws IOException {
+			writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+					+ "<?mso-application progid=\"Excel.Sheet\"?>\n"
+					+ "<Workbook xmlns=\"urn:schemas-microsoft-com:office:spreadsheet\""
+					+ " xmlns:ss=\"urn:schemas-microsoft-com:office:spreadsheet\">\n"
+					+ "<Worksheet ss:Name=\"Export\">\n<Table>\n");
+			writeRow(captions.toArray());
+		}
+
+		@Override
+		public void writeRow(Object[] values) throws IOException {
+			writer.write("<Row>");
+			for (Object value : values) {
+				if (value == null) {
+					writer.write("<Cell/>");
+					continue;
+				}
+
+				writer.write(isExcelNumber(value) ? "<Cell><Data ss:Type=\"Number\">" : "<Cell><Data ss:Type=\"String\">");
+				writeEscaped(value.toString());
+				writer.write("</Data></Cell>");
+			}
+			writer.write("</Row>\n");
+		}
+
+		@Override
+		public void finish() throws IOException {
+			writer.write("</Table>\n</Worksheet>\n</Workbook>\n");
+		}
+
+		private static boolean isExcelNumber(Object value) {
+			if (value instanceof Double || value instanceof Float)
+				return !Double.isNaN(((Number) value).doubleValue()) && !Double.isInfinite(((Number) value).doubleValue());
+			return value instanceof Number;
+		}
+
+		private void writeEscaped(String value) throws IOException {
+			for (int i = 0; i < value.length(); ++i) {
+				char c = value.charAt(i);
+				switch (c) {
+					case '&':
+						writer.write("&amp;");
+						break;
+					case '<':
+						writer.write("&lt;");
+						break;
+					case '>':
+						writer.write("&gt;");
+						break;
+					case '"':
+						writer.write("&quot;");
+						break;
+					default:
+						writer.write(c);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package org.vaadin.natale.dataprovider;
+
+public enum AggregateFunction {
+
+    // Sum of number values, or null if there are none.
+    SUM,
+
+    // Average of number values, or null if there are none.
+    AVG,
+
+    // Minimum of comparable values.
+    MIN,
+
+    // Maximum of comparable values.
+    MAX,
+
+    // Number of non null values.
+    COUNT
+}
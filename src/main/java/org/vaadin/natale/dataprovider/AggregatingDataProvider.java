@@ -0,0 +1,17 @@
+package org.vaadin.natale.dataprovider;
+
+/**
+ * Data provider, that computes aggregates of item properties for its current filter,
+ * without iterating all items by the caller.
+ */
+public interface AggregatingDataProvider {
+
+	/**
+	 * Get aggregate of property values of all items, that pass the current filter.
+	 *
+	 * @param propertyName property name.
+	 * @param function     aggregate function.
+	 * @return aggregate value, or {@code null} if there are no values to aggregate.
+	 */
+	Object getAggregate(String propertyName, AggregateFunction function);
+}
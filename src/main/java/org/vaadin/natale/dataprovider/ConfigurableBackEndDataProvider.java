@@ -3,10 +3,27 @@ package org.vaadin.natale.dataprovider;
 import com.vaadin.data.provider.DataChangeEvent;
 import com.vaadin.data.provider.ListDataProvider;
 import com.vaadin.data.provider.Query;
+import com.vaadin.server.SerializableComparator;
 import com.vaadin.server.SerializablePredicate;
+import com.vaadin.shared.Registration;
+import org.apache.log4j.Logger;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 
@@ -16,15 +33,41 @@ import java.util.stream.Stream;
  * @param <T> data type
  * @since 2.0
  */
-public class ConfigurableBackEndDataProvider<T> extends ListDataProvider<T> {
+public class ConfigurableBackEndDataProvider<T> extends ListDataProvider<T> implements AggregatingDataProvider {
 
-	protected final Supplier<Collection<T>> getAllElementsMethod;
-	protected Consumer<T> updateElementMethod;
-	protected Consumer<T> deleteElementMethod;
-	protected Consumer<T> addElementMethod;
+	private static final Logger logger = Logger.getLogger(ConfigurableBackEndDataProvider.class);
+
+	// Backend bindings aren't serialized. Subclasses, that support serialization, bind them again on deserialization.
+	protected transient Supplier<Collection<T>> getAllElementsMethod;
+	protected transient Consumer<T> updateElementMethod;
+	protected transient Consumer<T> deleteElementMethod;
+	protected transient Consumer<T> addElementMethod;
+	protected transient BiConsumer<T, Set<String>> partialUpdateElementMethod;
 
 	protected boolean isLazy = false;
 
+	// Extracts entity identity to match published entity changes against loaded items.
+	protected transient Function<T, ?> idGetter;
+
+	private transient Registration entityChangeRegistration;
+
+	// Referenced only weakly by EntityChangePublisher, so it's kept reachable by current provider.
+	private transient Executor entityChangeExecutor;
+
+	protected DirtyTracker<T> dirtyTracker;
+
+	// Created on first aggregate request.
+	protected transient InMemoryAggregator<T> aggregator;
+
+	// Mirrors of filter and sort state of ListDataProvider, which aren't readable there.
+	private SerializablePredicate<T> filter;
+	private SerializableComparator<T> sortComparator;
+
+	protected MemoryBudget memoryBudget;
+
+	// Items over the memory budget, or null if all items are in memory. Spilled items follow the items in memory.
+	private transient SpillStore<T> spillStore;
+
 	/**
 	 * Constructs a new ConfigurableBackEndDataProvider with supplier method,
 	 * that gets a collection of {@code T} elements.
@@ -42,6 +85,21 @@ public class ConfigurableBackEndDataProvider<T> extends ListDataProvider<T> {
 		this.getAllElementsMethod = getAllElementsMethod;
 	}
 
+	/**
+	 * Constructs a new ConfigurableBackEndDataProvider with supplier method and memory budget,
+	 * that is applied already to the first load.
+	 *
+	 * @param getAllElementsMethod supplier, to obtain data from backend.
+	 * @param memoryBudget         memory budget, or {@code null} to hold all items in memory.
+	 * @see #withMemoryBudget(MemoryBudget)
+	 */
+	public ConfigurableBackEndDataProvider(Supplier<Collection<T>> getAllElementsMethod, MemoryBudget memoryBudget) {
+		super(new ArrayList<>());
+		this.getAllElementsMethod = getAllElementsMethod;
+		this.memoryBudget = memoryBudget;
+		getItemsFromBackend();
+	}
+
 	/**
 	 * Constructs a new ConfigurableBackEndDataProvider with all necessary supplier
 	 * and consumer methods.
@@ -55,7 +113,25 @@ public class ConfigurableBackEndDataProvider<T> extends ListDataProvider<T> {
 	                                       Consumer<T> updateElementMethod,
 	                                       Consumer<T> deleteElementMethod,
 	                                       Consumer<T> addElementMethod) {
-		super(getAllElementsMethod.get());
+		this(getAllElementsMethod.get(), getAllElementsMethod, updateElementMethod, deleteElementMethod, addElementMethod);
+	}
+
+	/**
+	 * Constructs a new ConfigurableBackEndDataProvider with initial items,
+	 * without obtaining them from backend.
+	 *
+	 * @param initialItems         mutable collection to hold items in memory.
+	 * @param getAllElementsMethod supplier, to obtain data from backend.
+	 * @param updateElementMethod  consumer to update item in backend.
+	 * @param deleteElementMethod  consumer to delete item in backend.
+	 * @param addElementMethod     consumer to add item in backend.
+	 */
+	protected ConfigurableBackEndDataProvider(Collection<T> initialItems,
+	                                          Supplier<Collection<T>> getAllElementsMethod,
+	                                          Consumer<T> updateElementMethod,
+	                                          Consumer<T> deleteElementMethod,
+	                                          Consumer<T> addElementMethod) {
+		super(initialItems);
 		this.getAllElementsMethod = getAllElementsMethod;
 		this.updateElementMethod = updateElementMethod;
 		this.deleteElementMethod = deleteElementMethod;
@@ -67,21 +143,50 @@ public class ConfigurableBackEndDataProvider<T> extends ListDataProvider<T> {
 		if (!isLazy)
 			getItemsFromBackend();
 
-		return super.fetch(query);
+		return trackLoadedItems(spillStore == null ? super.fetch(query) : fetchWithSpilledItems(query));
 	}
 
+	@Override
+	public int size(Query<T, SerializablePredicate<T>> query) {
+		if (spillStore == null)
+			return super.size(query);
+
+		if (getFilter() == null && !query.getFilter().isPresent())
+			return getItems().size() + spillStore.size();
+
+		return (int) streamItems().filter(getQueryFilter(query)).count();
+	}
+
+	/**
+	 * Write item to backend and refresh it.<br>
+	 * With dirty tracking, the item is written only if some of its properties were changed.
+	 *
+	 * @param item item to refresh.
+	 * @see #withDirtyTracking()
+	 */
 	@Override
 	public void refreshItem(T item) {
-		if (updateElementMethod != null)
-			updateElementMethod.accept(item);
+		if (dirtyTracker == null) {
+			writeToBackend(updateElementMethod, item);
+		} else if (dirtyTracker.isDirty(item)) {
+			Set<String> changedProperties = dirtyTracker.getChangedProperties(item);
+			if (partialUpdateElementMethod != null && !changedProperties.isEmpty())
+				writeToBackend(changedItem -> partialUpdateElementMethod.accept(changedItem, changedProperties), item);
+			else
+				writeToBackend(updateElementMethod, item);
+
+			dirtyTracker.snapshot(item);
+		}
+
+		onItemUpdated(item);
 		fireEvent(new DataChangeEvent.DataRefreshEvent<>(this, item));
 	}
 
 	public void addItem(T item) throws IllegalArgumentException {
-		if (addElementMethod != null)
-			addElementMethod.accept(item);
+		writeToBackend(addElementMethod, item);
 
 		if (getItems().add(item)) {
+			onItemAdded(item);
 			fireEvent(new DataChangeEvent<>(this));
 		} else {
 			throw new IllegalArgumentException("There is already the same object in current data list - " + item);
@@ -90,10 +195,12 @@ public class ConfigurableBackEndDataProvider<T> extends ListDataProvider<T> {
 	}
 
 	public void deleteItem(T item) {
-		if (deleteElementMethod != null)
-			deleteElementMethod.accept(item);
+		writeToBackend(deleteElementMethod, item);
 
-		getItems().remove(item);
+		if (getItems().remove(item))
+			onItemRemoved(item);
+		else if (spillStore != null)
+			removeSpilledItem(spillStore.indexOf(item));
 		fireEvent(new DataChangeEvent<>(this));
 	}
 
@@ -108,6 +215,46 @@ public class ConfigurableBackEndDataProvider<T> extends ListDataProvider<T> {
 		return this;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * All other filter methods of {@link ListDataProvider} end up in this method.
+	 */
+	@Override
+	public void setFilter(SerializablePredicate<T> filter) {
+		this.filter = filter;
+		super.setFilter(filter);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * All other sort methods of {@link ListDataProvider} end up in this method.
+	 */
+	@Override
+	public void setSortComparator(SerializableComparator<T> comparator) {
+		this.sortComparator = comparator;
+		super.setSortComparator(comparator);
+	}
+
+	/**
+	 * Get the current in-memory filter.
+	 *
+	 * @return filter, or {@code null} if items aren't filtered.
+	 */
+	public SerializablePredicate<T> getFilter() {
+		return filter;
+	}
+
+	/**
+	 * Get the current in-memory sort comparator.
+	 *
+	 * @return comparator, or {@code null} if items aren't sorted.
+	 */
+	public SerializableComparator<T> getSortComparator() {
+		return sortComparator;
+	}
+
 	@Override
 	public void refreshAll() {
 		getItemsFromBackend();
@@ -118,7 +265,12 @@ public class ConfigurableBackEndDataProvider<T> extends ListDataProvider<T> {
 		try {
 			Collection<T> updatedItems = getAllElementsMethod.get();
 			getItems().clear();
-			getItems().addAll(updatedItems);
+			releaseSpilledItems();
+			if (memoryBudget == null)
+				getItems().addAll(updatedItems);
+			else
+				addItemsWithinBudget(updatedItems);
+			onItemsReloaded();
 		} catch (Exception e) {
 			e.printStackTrace();
 			//TODO
@@ -147,6 +299,499 @@ public class ConfigurableBackEndDataProvider<T> extends ListDataProvider<T> {
 		return this;
 	}
 
+	/**
+	 * Enable dirty tracking, so {@link #refreshItem(Object)} writes only items with modified properties.<br>
+	 * Snapshots of items are taken when they are fetched, or written to backend.
+	 *
+	 * @return current configurableBackEndDataProvider
+	 * @see DirtyTracker
+	 */
+	public ConfigurableBackEndDataProvider<T> withDirtyTracking() {
+		if (dirtyTracker == null)
+			dirtyTracker = new DirtyTracker<>();
+		return this;
+	}
+
+	/**
+	 * Set a consumer to write only changed properties of an item to backend (for example, by an update query).<br>
+	 * It is used instead of update element method, if dirty tracking is enabled and the changed properties are known.
+	 *
+	 * @param partialUpdateElementMethod consumer of item and names of its changed properties.
+	 * @return current configurableBackEndDataProvider
+	 * @see #withDirtyTracking()
+	 */
+	public ConfigurableBackEndDataProvider<T> withPartialUpdateElementMethod(BiConsumer<T, Set<String>> partialUpdateElementMethod) {
+		this.partialUpdateElementMethod = partialUpdateElementMethod;
+		return withDirtyTracking();
+	}
+
+	/**
+	 * Set a budget for items in memory, it is checked each time items are loaded from backend.<br>
+	 * Items over the budget are spilled to a memory-mapped temporary file and read back on demand,
+	 * so they have to be {@link java.io.Serializable}. Otherwise they are kept in memory and an error is logged.
+	 * Loaded items are checked one by one, so if supplier returns a lazily iterated collection
+	 * (for example, backed by a database cursor), items over the budget are never held in memory together.
+	 * <p>
+	 * <b>Note: </b>spilled items aren't serialized with the provider, they are loaded again by {@link #refreshAll()}.
+	 *
+	 * @param memoryBudget memory budget, or {@code null} to hold all items in memory.
+	 * @return current configurableBackEndDataProvider
+	 * @see MemoryBudget
+	 */
+	public ConfigurableBackEndDataProvider<T> withMemoryBudget(MemoryBudget memoryBudget) {
+		this.memoryBudget = memoryBudget;
+
+		// Spilled items are loaded again, to apply the new budget in the original order.
+		if (spillStore != null) {
+			getItemsFromBackend();
+			fireEvent(new DataChangeEvent<>(this));
+		} else {
+			enforceMemoryBudget();
+		}
+		return this;
+	}
+
+	/**
+	 * Bind current provider to changes of specified entity type, published through {@link EntityChangePublisher}.<br>
+	 * Changes are applied to the items in memory and fire item-level events, so there is no need to
+	 * reload all items by {@link #refreshAll()}. Added and updated entities are loaded by {@link #loadEntity(Object)},
+	 * if it isn't supported, all items are reloaded instead. The provider is switched to lazy mode.
+	 * <p>
+	 * Changes from other sessions are published on their threads, so the executor has to lock
+	 * the session of current provider (like {@code ui::access}).
+	 * The binding isn't serialized with the provider.
+	 *
+	 * @param entityType       entity type to listen to.
+	 * @param idGetter         function to get entity identity (like {@code Entity::getId}).
+	 * @param deliveryExecutor executor to apply changes on.
+	 * @return current configurableBackEndDataProvider
+	 */
+	public ConfigurableBackEndDataProvider<T> withEntityChanges(Class<T> entityType, Function<T, ?> idGetter,
+	                                                            Executor deliveryExecutor) {
+		Objects.requireNonNull(idGetter, "Id getter cannot be null");
+		Objects.requireNonNull(deliveryExecutor, "Delivery executor cannot be null");
+		if (entityChangeRegistration != null)
+			entityChangeRegistration.remove();
+
+		this.idGetter = idGetter;
+		this.entityChangeExecutor = deliveryExecutor;
+		entityChangeRegistration = EntityChangePublisher.subscribe(entityType, this, deliveryExecutor);
+		setLazy(true);
+		return this;
+	}
+
+	/**
+	 * Unbind current provider from entity changes.
+	 */
+	public void removeEntityChanges() {
+		if (entityChangeRegistration != null) {
+			entityChangeRegistration.remove();
+			entityChangeRegistration = null;
+			entityChangeExecutor = null;
+		}
+	}
+
+	/**
+	 * Apply published entity change to the items in memory.
+	 *
+	 * @param event entity change event.
+	 */
+	protected void applyEntityChange(EntityChangeEvent<T> event) {
+		Object id = event.getEntityId();
+
+		switch (event.getChangeType()) {
+			case ADDED:
+				if (findItem(id) == null && (spillStore == null || indexOfSpilledEntity(id) < 0)) {
+					T entity = loadEntity(id);
+					if (entity == null) {
+						refreshAll();
+						return;
+					}
+
+					getItems().add(entity);
+					onItemAdded(entity);
+					fireEvent(new DataChangeEvent<>(this));
+				}
+				break;
+			case UPDATED:
+				T previous = findItem(id);
+				int index = previous == null && spillStore != null ? indexOfSpilledEntity(id) : -1;
+				if (previous == null && index < 0)
+					break;
+
+				T entity = loadEntity(id);
+				if (entity == null) {
+					refreshAll();
+				} else if (previous != null) {
+					replaceItem(previous, entity);
+				} else {
+					spillStore.set(index, entity);
+					fireEvent(new DataChangeEvent<>(this));
+				}
+				break;
+			case REMOVED:
+				if (removeItem(id) || (spillStore != null && removeSpilledItem(indexOfSpilledEntity(id))))
+					fireEvent(new DataChangeEvent<>(this));
+				break;
+		}
+	}
+
+	/**
+	 * Load current state of the entity from backend, to apply a published entity change.<br>
+	 * Called on delivery executor of the provider.
+	 *
+	 * @param id entity identity.
+	 * @return loaded entity, or {@code null} if it isn't found or loading of single entities isn't supported.
+	 */
+	protected T loadEntity(Object id) {
+		return null;
+	}
+
+	/**
+	 * Get aggregate of property values of all items, that pass the current filter.<br>
+	 * Aggregates are computed once and then maintained incrementally on added, deleted and refreshed items.
+	 * All aggregates are recomputed by a single pass, when items are reloaded (or filter is changed).
+	 *
+	 * @param propertyName property name.
+	 * @param function     aggregate function.
+	 * @return aggregate value, or {@code null} if there are no values to aggregate.
+	 */
+	@Override
+	public Object getAggregate(String propertyName, AggregateFunction function) {
+		// Aggregates of spilled items aren't maintained, as they would keep references to all items.
+		if (spillStore != null)
+			return InMemoryAggregator.compute(streamItems().filter(this::passesFilter), propertyName, function);
+
+		if (aggregator == null)
+			aggregator = new InMemoryAggregator<>();
+
+		return aggregator.getAggregate(propertyName, function, () -> getItems().stream().filter(this::passesFilter));
+	}
+
+	/**
+	 * Called after an item has been added to the items in memory.
+	 *
+	 * @param item added item.
+	 */
+	protected void onItemAdded(T item) {
+		if (aggregator != null && passesFilter(item))
+			aggregator.itemAdded(item);
+	}
+
+	/**
+	 * Called after an item has been removed from the items in memory.
+	 *
+	 * @param item removed item.
+	 */
+	protected void onItemRemoved(T item) {
+		if (dirtyTracker != null)
+			dirtyTracker.forget(item);
+		if (aggregator != null)
+			aggregator.itemRemoved(item);
+	}
+
+	/**
+	 * Called after an item has been refreshed.
+	 *
+	 * @param item refreshed item.
+	 */
+	protected void onItemUpdated(T item) {
+		if (spillStore != null && !getItems().contains(item)) {
+			int index = spillStore.indexOf(item);
+			if (index >= 0)
+				spillStore.set(index, item);
+			return;
+		}
+
+		if (aggregator != null) {
+			aggregator.itemRemoved(item);
+			if (passesFilter(item))
+				aggregator.itemAdded(item);
+		}
+	}
+
+	/**
+	 * Called after an item has been replaced by a new instance at the same position.
+	 *
+	 * @param previous replaced item.
+	 * @param item     new item.
+	 */
+	protected void onItemReplaced(T previous, T item) {
+		if (dirtyTracker != null)
+			dirtyTracker.forget(previous);
+		if (aggregator != null) {
+			aggregator.itemRemoved(previous);
+			if (passesFilter(item))
+				aggregator.itemAdded(item);
+		}
+	}
+
+	/**
+	 * Called after all items have been reloaded from backend.
+	 */
+	protected void onItemsReloaded() {
+		// Reloaded items are new instances, they are tracked as soon as they are fetched.
+		if (dirtyTracker != null)
+			dirtyTracker.clear();
+		if (aggregator != null)
+			aggregator.invalidate();
+	}
+
+	/**
+	 * Check items in memory against the memory budget, and call {@link #onMemoryBudgetExceeded(Iterator)} if it's exceeded.
+	 */
+	protected void enforceMemoryBudget() {
+		if (memoryBudget == null)
+			return;
+
+		Collection<T> items = getItems();
+		int inMemoryRows = memoryBudget.findOverflowIndex(items, getClass().getSimpleName());
+		if (inMemoryRows < 0)
+			return;
+
+		List<T> coldItems = new ArrayList<>(items.size() - inMemoryRows);
+		Iterator<T> iterator = items.iterator();
+		for (int i = 0; iterator.hasNext(); ++i) {
+			T item = iterator.next();
+			if (i >= inMemoryRows) {
+				coldItems.add(item);
+				iterator.remove();
+			}
+		}
+		if (items instanceof ArrayList)
+			((ArrayList<T>) items).trimToSize();
+
+		onMemoryBudgetExceeded(coldItems.iterator());
+	}
+
+	/**
+	 * Called when items in memory fill the memory budget.<br>
+	 * Remaining items, that aren't in memory, are spilled to a memory-mapped temporary file.
+	 *
+	 * @param coldItems items after the items in memory, in their original order.
+	 */
+	protected void onMemoryBudgetExceeded(Iterator<T> coldItems) {
+		List<T> block = new ArrayList<>(SpillStore.BLOCK_SIZE);
+		try {
+			spillStore = new SpillStore<>();
+			while (coldItems.hasNext()) {
+				block.add(coldItems.next());
+				if (block.size() == SpillStore.BLOCK_SIZE || !coldItems.hasNext()) {
+					spillStore.addAll(block);
+					block.clear();
+				}
+			}
+		} catch (IOException e) {
+			logger.error("Couldn't spill items of [" + getClass().getSimpleName() + "] over memory budget, "
+					+ "they are kept in memory. Items have to be Serializable", e);
+
+			// Already spilled items are read back as copies.
+			if (spillStore != null)
+				spillStore.stream().forEach(getItems()::add);
+			getItems().addAll(block);
+			coldItems.forEachRemaining(getItems()::add);
+			releaseSpilledItems();
+			return;
+		}
+
+		if (aggregator != null)
+			aggregator.invalidate();
+	}
+
+	/**
+	 * Stream all items: items in memory, followed by spilled items.
+	 *
+	 * @return stream of all items.
+	 */
+	protected Stream<T> streamItems() {
+		return spillStore == null ? getItems().stream() : Stream.concat(getItems().stream(), spillStore.stream());
+	}
+
+	protected boolean passesFilter(T item) {
+		SerializablePredicate<T> filter = getFilter();
+		return filter == null || filter.test(item);
+	}
+
+	/**
+	 * Run write method of backend for an item, without receiving own change back
+	 * through {@link EntityChangePublisher}.
+	 *
+	 * @param writeMethod backend consumer, or {@code null}.
+	 * @param item        item to write.
+	 */
+	protected void writeToBackend(Consumer<T> writeMethod, T item) {
+		if (writeMethod != null)
+			EntityChangePublisher.runAsOrigin(this, () -> writeMethod.accept(item));
+	}
+
+	/**
+	 * Take snapshots of fetched items, if dirty tracking is enabled.
+	 *
+	 * @param items fetched items.
+	 * @return the same items.
+	 */
+	protected Stream<T> trackLoadedItems(Stream<T> items) {
+		return dirtyTracker == null ? items : items.peek(dirtyTracker::snapshotIfAbsent);
+	}
+
+	private Predicate<T> getQueryFilter(Query<T, SerializablePredicate<T>> query) {
+		SerializablePredicate<T> filter = getFilter();
+		Optional<SerializablePredicate<T>> queryFilter = query.getFilter();
+		return item -> (filter == null || filter.test(item)) && (!queryFilter.isPresent() || queryFilter.get().test(item));
+	}
+
+	private Stream<T> fetchWithSpilledItems(Query<T, SerializablePredicate<T>> query) {
+		Stream<T> items = streamItems().filter(getQueryFilter(query));
+		Comparator<T> comparator = Stream.of(query.getInMemorySorting(), getSortComparator())
+				.filter(Objects::nonNull)
+				.reduce((first, second) -> first.thenComparing(second))
+				.orElse(null);
+
+		if (comparator == null)
+			return items.skip(query.getOffset()).limit(query.getLimit());
+
+		// Only the first offset + limit items are kept in memory, equal items are ordered by their position.
+		long maxItems = (long) query.getOffset() + query.getLimit();
+		Comparator<PositionedItem<T>> order = Comparator.<PositionedItem<T>, T>comparing(positioned -> positioned.item, comparator)
+				.thenComparingLong(positioned -> positioned.position);
+		PriorityQueue<PositionedItem<T>> firstItems = new PriorityQueue<>(order.reversed());
+
+		long[] position = {0};
+		items.forEach(item -> {
+			firstItems.add(new PositionedItem<>(item, position[0]++));
+			if (firstItems.size() > maxItems)
+				firstItems.poll();
+		});
+
+		List<PositionedItem<T>> sortedItems = new ArrayList<>(firstItems);
+		sortedItems.sort(order);
+		return sortedItems.stream()
+				.skip(query.getOffset())
+				.map(positioned -> positioned.item);
+	}
+
+	private int indexOfSpilledEntity(Object id) {
+		return spillStore.indexOf(item -> Objects.equals(idGetter.apply(item), id));
+	}
+
+	private boolean removeSpilledItem(int index) {
+		if (index < 0)
+			return false;
+
+		T item = spillStore.get(index);
+		spillStore.remove(index);
+		if (dirtyTracker != null)
+			dirtyTracker.forget(item);
+		return true;
+	}
+
+	// Items are checked while they are iterated, so items over the budget are passed on without adding them to memory.
+	private void addItemsWithinBudget(Collection<T> items) {
+		MemoryBudget.Usage usage = memoryBudget.newUsage();
+		Iterator<T> iterator = items.iterator();
+		while (iterator.hasNext()) {
+			T item = iterator.next();
+			if (!usage.add(item)) {
+				memoryBudget.exceeded(getClass().getSimpleName(), items.size(), usage.getEstimatedBytes(), usage.getRows());
+				onMemoryBudgetExceeded(new ColdItemIterator<>(item, iterator));
+				return;
+			}
+			getItems().add(item);
+		}
+	}
+
+	private void releaseSpilledItems() {
+		if (spillStore != null) {
+			spillStore.close();
+			spillStore = null;
+		}
+	}
+
+	private T findItem(Object id) {
+		for (T item : getItems()) {
+			if (Objects.equals(idGetter.apply(item), id))
+				return item;
+		}
+		return null;
+	}
+
+	private void replaceItem(T previous, T entity) {
+		if (getItems() instanceof List) {
+			ListIterator<T> iterator = ((List<T>) getItems()).listIterator();
+			while (iterator.hasNext()) {
+				if (iterator.next() == previous) {
+					iterator.set(entity);
+					break;
+				}
+			}
+		} else {
+			getItems().remove(previous);
+			getItems().add(entity);
+		}
+
+		onItemReplaced(previous, entity);
+
+		// Grid can refresh a single row only if the new entity equals to the displayed one.
+		if (previous == entity || previous.equals(entity))
+			fireEvent(new DataChangeEvent.DataRefreshEvent<>(this, entity));
+		else
+			fireEvent(new DataChangeEvent<>(this));
+	}
+
+	private boolean removeItem(Object id) {
+		Iterator<T> iterator = getItems().iterator();
+		while (iterator.hasNext()) {
+			T item = iterator.next();
+			if (Objects.equals(idGetter.apply(item), id)) {
+				iterator.remove();
+				onItemRemoved(item);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Item, that exceeded the budget, followed by items, that haven't been iterated yet.
+	private static final class ColdItemIterator<T> implements Iterator<T> {
+
+		private final T first;
+
+		private final Iterator<T> rest;
+
+		private boolean firstReturned;
+
+		private ColdItemIterator(T first, Iterator<T> rest) {
+			this.first = first;
+			this.rest = rest;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return !firstReturned || rest.hasNext();
+		}
+
+		@Override
+		public T next() {
+			if (firstReturned)
+				return rest.next();
+
+			firstReturned = true;
+			return first;
+		}
+	}
+
+	private static final class PositionedItem<T> {
+
+		private final T item;
+
+		private final long position;
+
+		private PositionedItem(T item, long position) {
+			this.item = item;
+			this.position = position;
+		}
+	}
+
 	public boolean isLazy() {
 		return isLazy;
 	}
@@ -0,0 +1,247 @@
+package org.vaadin.natale.dataprovider;
+
+import org.apache.log4j.Logger;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.vaadin.natale.util.ReflectionUtil.invokeGetterMethodForObject;
+
+/**
+ * Tracks property-level modifications of loaded items.<br>
+ * A snapshot of property values is taken per item instance, and compared to current values to find changed properties.
+ * Simple values (primitives, strings, numbers, enums, dates) are compared by {@code equals()}.
+ * Other writable properties (associations, collections) are compared by reference identity,
+ * which doesn't initialize lazy JPA relations.
+ * <p>
+ * <b>Note: </b>a value modified in place (like {@code Date.setTime()} or adding an element
+ * to a collection) isn't detected, only a value replaced by its setter.
+ * <p>
+ * Items are referenced weakly, so snapshots of items, that aren't used anymore
+ * (like entities of evicted pages), are dropped together with them.
+ * Snapshots aren't serialized, so deserialized items are written to backend completely once.
+ *
+ * @param <T> data type
+ */
+public class DirtyTracker<T> implements Serializable {
+
+	private static final Logger logger = Logger.getLogger(DirtyTracker.class);
+
+	private static final Map<Class<?>, TrackedProperties> trackedPropertiesByClass = new ConcurrentHashMap<>();
+
+	// Snapshots by item identity.
+	private transient Map<ItemReference, Object[]> snapshots = new HashMap<>();
+
+	private transient ReferenceQueue<Object> collectedItems = new ReferenceQueue<>();
+
+	/**
+	 * Take a snapshot of current property values of the item.
+	 *
+	 * @param item item to take the snapshot of.
+	 */
+	public void snapshot(T item) {
+		expungeCollectedItems();
+		snapshots.put(new ItemReference(item, collectedItems), getTrackedProperties(item).takeSnapshot(item));
+	}
+
+	/**
+	 * Take a snapshot of the item, if there isn't one yet.
+	 *
+	 * @param item item to take the snapshot of.
+	 */
+	public void snapshotIfAbsent(T item) {
+		if (!snapshots.containsKey(new ItemReference(item, null)))
+			snapshot(item);
+	}
+
+	/**
+	 * Get names of properties, that have been changed since the last snapshot.
+	 *
+	 * @param item item to check.
+	 * @return names of changed properties, or all tracked property names if there is no snapshot of the item.
+	 */
+	public Set<String> getChangedProperties(T item) {
+		TrackedProperties trackedProperties = getTrackedProperties(item);
+		Object[] snapshot = snapshots.get(new ItemReference(item, null));
+		if (snapshot == null)
+			return new LinkedHashSet<>(Arrays.asList(trackedProperties.names));
+
+		Object[] values = trackedProperties.readValues(item);
+		Set<String> changedProperties = new LinkedHashSet<>();
+		for (int i = 0; i < values.length; ++i) {
+			if (trackedProperties.isChanged(i, snapshot[i], values[i]))
+				changedProperties.add(trackedProperties.names[i]);
+		}
+		return changedProperties;
+	}
+
+	/**
+	 * Checks if the item has to be written to backend.
+	 *
+	 * @param item item to check.
+	 * @return {@code false} only if there is a snapshot of the item and no tracked property was changed.
+	 */
+	public boolean isDirty(T item) {
+		return !snapshots.containsKey(new ItemReference(item, null))
+				|| getTrackedProperties(item).getters.length == 0
+				|| !getChangedProperties(item).isEmpty();
+	}
+
+	public void forget(T item) {
+		snapshots.remove(new ItemReference(item, null));
+		expungeCollectedItems();
+	}
+
+	public void clear() {
+		snapshots.clear();
+		expungeCollectedItems();
+	}
+
+	private void expungeCollectedItems() {
+		Reference<?> reference;
+		while ((reference = collectedItems.poll()) != null)
+			snapshots.remove(reference);
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		snapshots = new HashMap<>();
+		collectedItems = new ReferenceQueue<>();
+	}
+
+	private TrackedProperties getTrackedProperties(T item) {
+		return trackedPropertiesByClass.computeIfAbsent(item.getClass(), TrackedProperties::new);
+	}
+
+	private static boolean isSimpleType(Class<?> type) {
+		return type.isPrimitive()
+				|| type.isEnum()
+				|| type == String.class
+				|| type == Boolean.class
+				|| type == Character.class
+				|| type == UUID.class
+				|| Number.class.isAssignableFrom(type)
+				|| Date.class.isAssignableFrom(type)
+				|| type.getName().startsWith("java.time.");
+	}
+
+	/**
+	 * Weak reference to an item, which is equal to other references to the same item instance.
+	 */
+	private static final class ItemReference extends WeakReference<Object> {
+
+		private final int hash;
+
+		private ItemReference(Object item, ReferenceQueue<Object> queue) {
+			super(item, queue);
+			this.hash = System.identityHashCode(item);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o)
+				return true;
+			if (!(o instanceof ItemReference))
+				return false;
+
+			Object item = get();
+			return item != null && item == ((ItemReference) o).get();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	private static final class TrackedProperties {
+
+		private final String[] names;
+
+		private final Method[] getters;
+
+		private final boolean[] comparedByIdentity;
+
+		private TrackedProperties(Class<?> clazz) {
+			List<String> names = new ArrayList<>();
+			List<Method> getters = new ArrayList<>();
+			List<Boolean> comparedByIdentity = new ArrayList<>();
+			try {
+				for (PropertyDescriptor descriptor : Introspector.getBeanInfo(clazz, Object.class).getPropertyDescriptors()) {
+					Method getter = descriptor.getReadMethod();
+					if (getter == null || descriptor.getPropertyType() == null)
+						continue;
+
+					// Derived getters of other types could navigate lazy relations, so only writable ones are tracked.
+					boolean simpleType = isSimpleType(descriptor.getPropertyType());
+					if (simpleType || descriptor.getWriteMethod() != null) {
+						names.add(descriptor.getName());
+						getters.add(getter);
+						comparedByIdentity.add(!simpleType);
+					}
+				}
+			} catch (IntrospectionException e) {
+				logger.error("Couldn't introspect class [" + clazz.getSimpleName() + "], its items are always written to backend", e);
+				names = Collections.emptyList();
+				getters = Collections.emptyList();
+				comparedByIdentity = Collections.emptyList();
+			}
+
+			this.names = names.toArray(new String[names.size()]);
+			this.getters = getters.toArray(new Method[getters.size()]);
+			this.comparedByIdentity = new boolean[comparedByIdentity.size()];
+			for (int i = 0; i < this.comparedByIdentity.length; ++i)
+				this.comparedByIdentity[i] = comparedByIdentity.get(i);
+		}
+
+		private Object[] readValues(Object item) {
+			Object[] values = new Object[getters.length];
+			for (int i = 0; i < getters.length; ++i)
+				values[i] = invokeGetterMethodForObject(getters[i], item);
+			return values;
+		}
+
+		// Values compared by identity are referenced weakly, as they can reference the item
+		// (like owner of a JPA collection), which would keep it from being collected.
+		private Object[] takeSnapshot(Object item) {
+			Object[] values = readValues(item);
+			for (int i = 0; i < values.length; ++i) {
+				if (comparedByIdentity[i] && values[i] != null)
+					values[i] = new WeakReference<>(values[i]);
+			}
+			return values;
+		}
+
+		private boolean isChanged(int index, Object snapshotValue, Object value) {
+			if (!comparedByIdentity[index])
+				return !Objects.equals(snapshotValue, value);
+
+			if (snapshotValue == null)
+				return value != null;
+
+			// Collected value can't be the current one.
+			Object previous = ((WeakReference<?>) snapshotValue).get();
+			return previous == null || previous != value;
+		}
+	}
+}
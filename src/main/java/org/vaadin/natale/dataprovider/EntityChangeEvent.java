@@ -0,0 +1,57 @@
+package org.vaadin.natale.dataprovider;
+
+import java.util.EventObject;
+
+/**
+ * Event about a single entity change, delivered to all data providers
+ * bound to the entity type.<br>
+ * Event carries only identity of the entity, each provider loads the entity itself, if it needs it.
+ *
+ * @param <T> entity type
+ * @see EntityChangePublisher
+ */
+public class EntityChangeEvent<T> extends EventObject {
+
+	public enum ChangeType {
+		ADDED,
+
+		UPDATED,
+
+		REMOVED
+	}
+
+	private final Object entityId;
+
+	private final ChangeType changeType;
+
+	/**
+	 * Creates a new EntityChangeEvent.
+	 *
+	 * @param entityType type of changed entity.
+	 * @param entityId   identity of changed entity.
+	 * @param changeType type of the change.
+	 */
+	public EntityChangeEvent(Class<T> entityType, Object entityId, ChangeType changeType) {
+		super(entityType);
+		this.entityId = entityId;
+		this.changeType = changeType;
+	}
+
+	@SuppressWarnings("unchecked")
+	public Class<T> getEntityType() {
+		return (Class<T>) getSource();
+	}
+
+	public Object getEntityId() {
+		return entityId;
+	}
+
+	public ChangeType getChangeType() {
+		return changeType;
+	}
+
+	@Override
+	public String toString() {
+		return "EntityChangeEvent[" + changeType + " " + getEntityType().getSimpleName() + "#" + entityId + "]";
+	}
+}
@@ -0,0 +1,50 @@
+package org.vaadin.natale.dataprovider;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * JPA entity listener, that publishes entity lifecycle changes through {@link EntityChangePublisher}.<br>
+ * Register it on an entity with {@code @EntityListeners(EntityChangeListener.class)}.
+ * <p>
+ * Callbacks are invoked on flush, so within a Spring managed transaction changes are published
+ * after it's committed, and dropped if it's rolled back. Without transaction synchronization
+ * changes are published immediately.
+ */
+public class EntityChangeListener {
+
+	@PostPersist
+	public void postPersist(Object entity) {
+		publishAfterCommit(entity, EntityChangeEvent.ChangeType.ADDED);
+	}
+
+	@PostUpdate
+	public void postUpdate(Object entity) {
+		publishAfterCommit(entity, EntityChangeEvent.ChangeType.UPDATED);
+	}
+
+	@PostRemove
+	public void postRemove(Object entity) {
+		publishAfterCommit(entity, EntityChangeEvent.ChangeType.REMOVED);
+	}
+
+	private static void publishAfterCommit(Object entity, EntityChangeEvent.ChangeType changeType) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			EntityChangePublisher.publish(entity, changeType);
+			return;
+		}
+
+		// Transaction can be committed outside of the backend write, so the origin is captured on flush.
+		Object origin = EntityChangePublisher.getCurrentOrigin();
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCommit() {
+				EntityChangePublisher.publish(entity, changeType, origin);
+			}
+		});
+	}
+}
@@ -0,0 +1,163 @@
+package org.vaadin.natale.dataprovider;
+
+import com.vaadin.shared.Registration;
+import org.apache.log4j.Logger;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Channel, that delivers entity changes to all {@link ConfigurableBackEndDataProvider}s
+ * bound to the entity type (in all sessions).<br>
+ * Changes can be published explicitly, or by {@link EntityChangeListener} registered
+ * as JPA entity listener.
+ * <p>
+ * Providers and their delivery executors are referenced weakly, so an unused provider
+ * (together with UI captured by its executor) doesn't have to be unregistered.
+ * <p>
+ * Only entity type, identity and change type are delivered. Each provider loads the changed entity
+ * through its own backend on its delivery executor, so sessions don't share entity instances,
+ * and detached copies of lazy relations aren't delivered.
+ *
+ * @see ConfigurableBackEndDataProvider#withEntityChanges(Class, java.util.function.Function, Executor)
+ */
+public final class EntityChangePublisher {
+
+	private static final Logger logger = Logger.getLogger(EntityChangePublisher.class);
+
+	private static final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+	// Provider, that is writing to backend in current thread. It already knows about its own changes.
+	private static final ThreadLocal<Object> currentOrigin = new ThreadLocal<>();
+
+	private EntityChangePublisher() {
+	}
+
+	/**
+	 * Publish entity change to all providers bound to the entity type.<br>
+	 * Entity identity is taken by id getter of each bound provider.
+	 *
+	 * @param entity     changed entity.
+	 * @param changeType type of the change.
+	 */
+	public static void publish(Object entity, EntityChangeEvent.ChangeType changeType) {
+		publish(entity, changeType, currentOrigin.get());
+	}
+
+	/**
+	 * Publish entity change by entity identity to all providers bound to the entity type.
+	 *
+	 * @param event entity change event.
+	 */
+	public static void publish(EntityChangeEvent<?> event) {
+		Object origin = currentOrigin.get();
+		forEachSubscription(origin, subscription -> subscription.entityType.isAssignableFrom(event.getEntityType()),
+				(subscription, provider) -> event);
+	}
+
+	/**
+	 * Publish entity change to all providers bound to the entity type, except the origin.
+	 *
+	 * @param entity     changed entity.
+	 * @param changeType type of the change.
+	 * @param origin     provider, that made the change, or {@code null}.
+	 */
+	@SuppressWarnings("unchecked")
+	static void publish(Object entity, EntityChangeEvent.ChangeType changeType, Object origin) {
+		forEachSubscription(origin, subscription -> subscription.entityType.isInstance(entity),
+				(subscription, provider) -> new EntityChangeEvent<>((Class<Object>) subscription.entityType,
+						((Function<Object, ?>) provider.idGetter).apply(entity), changeType));
+	}
+
+	/**
+	 * Bind provider to changes of specified entity type.
+	 *
+	 * @param entityType       entity type.
+	 * @param provider         provider to receive changes.
+	 * @param deliveryExecutor executor to apply changes on (for example {@code ui::access}).
+	 * @return registration to unbind the provider.
+	 */
+	static Registration subscribe(Class<?> entityType, ConfigurableBackEndDataProvider<?> provider, Executor deliveryExecutor) {
+		Subscription subscription = new Subscription(
+				Objects.requireNonNull(entityType, "Entity type cannot be null"),
+				provider,
+				Objects.requireNonNull(deliveryExecutor, "Delivery executor cannot be null"));
+
+		subscriptions.add(subscription);
+		return () -> subscriptions.remove(subscription);
+	}
+
+	/**
+	 * Run backend write of the provider, without publishing resulting changes back to it.
+	 *
+	 * @param origin provider, that writes to backend.
+	 * @param write  backend write.
+	 */
+	static void runAsOrigin(Object origin, Runnable write) {
+		Object previousOrigin = currentOrigin.get();
+		currentOrigin.set(origin);
+		try {
+			write.run();
+		} finally {
+			if (previousOrigin == null)
+				currentOrigin.remove();
+			else
+				currentOrigin.set(previousOrigin);
+		}
+	}
+
+	/**
+	 * Get provider, that is writing to backend in current thread.
+	 *
+	 * @return origin provider, or {@code null}.
+	 */
+	static Object getCurrentOrigin() {
+		return currentOrigin.get();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void forEachSubscription(Object origin, Predicate<Subscription> matches,
+	                                        BiFunction<Subscription, ConfigurableBackEndDataProvider<?>, EntityChangeEvent<?>> eventFactory) {
+		for (Subscription subscription : subscriptions) {
+			ConfigurableBackEndDataProvider provider = subscription.provider.get();
+			Executor deliveryExecutor = subscription.deliveryExecutor.get();
+			if (provider == null || deliveryExecutor == null) {
+				subscriptions.remove(subscription);
+				continue;
+			}
+
+			if (provider == origin || !matches.test(subscription))
+				continue;
+
+			try {
+				EntityChangeEvent<?> event = eventFactory.apply(subscription, provider);
+				deliveryExecutor.execute(() -> provider.applyEntityChange(event));
+			} catch (RuntimeException e) {
+				logger.warn("Couldn't deliver change of " + subscription.entityType.getSimpleName() + " to data provider " + provider, e);
+			}
+		}
+	}
+
+	private static final class Subscription {
+
+		private final Class<?> entityType;
+
+		private final WeakReference<ConfigurableBackEndDataProvider<?>> provider;
+
+		// Executor is kept reachable by the provider. Executors like ui::access reference the UI,
+		// which references the provider, so a strong reference would keep them all.
+		private final WeakReference<Executor> deliveryExecutor;
+
+		private Subscription(Class<?> entityType, ConfigurableBackEndDataProvider<?> provider, Executor deliveryExecutor) {
+			this.entityType = entityType;
+			this.provider = new WeakReference<>(provider);
+			this.deliveryExecutor = new WeakReference<>(deliveryExecutor);
+		}
+	}
+}
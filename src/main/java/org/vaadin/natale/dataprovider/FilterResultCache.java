@@ -0,0 +1,280 @@
+package org.vaadin.natale.dataprovider;
+
+import org.vaadin.natale.filter.PropertyFilterKey;
+import org.vaadin.natale.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * LRU cache of filter results over the items in memory, keyed by {@link PropertyFilterKey} and sort state.<br>
+ * Each result is stored as an {@code int[]} of positions of matched items in filter or sort order.
+ * Positions refer to a mirror of the item list, which is kept in sync by item changes, so results
+ * are updated in place on added, removed and updated items instead of being recomputed.
+ *
+ * @param <T> data type
+ */
+final class FilterResultCache<T> {
+
+	// Sort key of results in item list order.
+	private static final Object UNSORTED = "unsorted";
+
+	private final LruCache<ResultKey, Result> results;
+
+	// Items in list order, or null if no results were computed since the last reload.
+	private List<T> items;
+
+	FilterResultCache(int maxResults) {
+		this.results = new LruCache<>(maxResults);
+	}
+
+	/**
+	 * Get positions of the items, that pass the filter, in item list order.
+	 *
+	 * Results are computed by the key itself, so they are consistent with in-place updates.
+	 *
+	 * @param filterKey key of the filter state.
+	 * @param listItems current item list, used only if no results are cached.
+	 * @return cached or computed result.
+	 */
+	Result getResult(PropertyFilterKey filterKey, Collection<T> listItems) {
+		ResultKey key = new ResultKey(filterKey, UNSORTED);
+		Result result = results.get(key);
+		if (result != null)
+			return result;
+
+		if (items == null)
+			items = new ArrayList<>(listItems);
+
+		int[] positions = IntStream.range(0, items.size())
+				.filter(position -> filterKey.test(items.get(position)))
+				.toArray();
+		result = new Result(filterKey, null, positions);
+		results.put(key, result);
+		return result;
+	}
+
+	/**
+	 * Get positions of the items, that pass the filter, in sort order.
+	 *
+	 * @param filterKey  key of the filter state.
+	 * @param listItems  current item list, used only if no results are cached.
+	 * @param sortKey    hashable sort state, or {@code null} if the result can't be cached.
+	 * @param comparator comparator of the sort state.
+	 * @return cached or computed result.
+	 */
+	Result getSortedResult(PropertyFilterKey filterKey, Collection<T> listItems, Object sortKey, Comparator<T> comparator) {
+		ResultKey key = new ResultKey(filterKey, sortKey);
+		Result result = sortKey == null ? null : results.get(key);
+		if (result != null)
+			return result;
+
+		Result unsorted = getResult(filterKey, listItems);
+		Comparator<Integer> order = toPositionOrder(comparator);
+		int[] positions = Arrays.stream(unsorted.positions, 0, unsorted.size)
+				.boxed()
+				.sorted(order)
+				.mapToInt(Integer::intValue)
+				.toArray();
+
+		result = new Result(filterKey, comparator, positions);
+		if (sortKey != null)
+			results.put(key, result);
+		return result;
+	}
+
+	/**
+	 * Stream items of the result.
+	 *
+	 * @param result cached result.
+	 * @param offset offset of the first item.
+	 * @param limit  maximum number of items.
+	 * @return stream of items.
+	 */
+	Stream<T> stream(Result result, int offset, int limit) {
+		int end = (int) Math.min((long) offset + limit, result.size);
+		return IntStream.range(Math.min(offset, end), end).mapToObj(index -> items.get(result.positions[index]));
+	}
+
+	/**
+	 * Add an item, appended to the end of the item list.
+	 *
+	 * @param item added item.
+	 */
+	void itemAppended(T item) {
+		if (items == null)
+			return;
+
+		int position = items.size();
+		items.add(item);
+		results.forEach((key, result) -> {
+			if (result.filterKey.test(item))
+				result.insert(position, getPositionOrder(result));
+		});
+	}
+
+	/**
+	 * Remove an item, positions of the following items are shifted.
+	 *
+	 * @param item removed item.
+	 */
+	void itemRemoved(T item) {
+		int position = indexOf(item);
+		if (position < 0)
+			return;
+
+		items.remove(position);
+		results.forEach((key, result) -> result.removeAndShift(position));
+	}
+
+	/**
+	 * Re-evaluate an item, that was changed or replaced at its position.
+	 *
+	 * @param previous previous item.
+	 * @param item     changed or new item.
+	 */
+	void itemUpdated(T previous, T item) {
+		int position = indexOf(previous);
+		if (position < 0)
+			return;
+
+		if (previous != item)
+			items.set(position, item);
+		results.forEach((key, result) -> {
+			result.remove(position);
+			if (result.filterKey.test(item))
+				result.insert(position, getPositionOrder(result));
+		});
+	}
+
+	/**
+	 * Drop all results, together with the item list mirror.
+	 */
+	void invalidate() {
+		results.clear();
+		items = null;
+	}
+
+	private int indexOf(T item) {
+		if (items == null)
+			return -1;
+
+		// Changed items are usually recently added, so they are searched from the end.
+		for (int i = items.size() - 1; i >= 0; --i) {
+			if (items.get(i) == item)
+				return i;
+		}
+
+		// Item list is changed by equality (like List.remove()), so the first equal item is affected.
+		return items.indexOf(item);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Comparator<Integer> getPositionOrder(Result result) {
+		return toPositionOrder((Comparator<T>) result.comparator);
+	}
+
+	// Orders positions by their items, equal items by position.
+	private Comparator<Integer> toPositionOrder(Comparator<T> comparator) {
+		Comparator<Integer> byPosition = Integer::compare;
+		return comparator == null ? byPosition
+				: Comparator.<Integer, T>comparing(items::get, comparator).thenComparing(byPosition);
+	}
+
+	/**
+	 * Positions of matched items for a filter and sort state.
+	 */
+	static final class Result {
+
+		private final PropertyFilterKey filterKey;
+
+		// Comparator of item order, or null for item list order.
+		private final Comparator<?> comparator;
+
+		private int[] positions;
+
+		private int size;
+
+		private Result(PropertyFilterKey filterKey, Comparator<?> comparator, int[] positions) {
+			this.filterKey = filterKey;
+			this.comparator = comparator;
+			this.positions = positions;
+			this.size = positions.length;
+		}
+
+		int size() {
+			return size;
+		}
+
+		private void insert(int position, Comparator<Integer> order) {
+			int low = 0;
+			int high = size;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (order.compare(positions[middle], position) < 0)
+					low = middle + 1;
+				else
+					high = middle;
+			}
+
+			if (size == positions.length)
+				positions = Arrays.copyOf(positions, Math.max(8, size * 2));
+			System.arraycopy(positions, low, positions, low + 1, size - low);
+			positions[low] = position;
+			++size;
+		}
+
+		private void remove(int position) {
+			for (int i = 0; i < size; ++i) {
+				if (positions[i] == position) {
+					System.arraycopy(positions, i + 1, positions, i, size - i - 1);
+					--size;
+					return;
+				}
+			}
+		}
+
+		private void removeAndShift(int position) {
+			int target = 0;
+			for (int i = 0; i < size; ++i) {
+				if (positions[i] != position)
+					positions[target++] = positions[i] > position ? positions[i] - 1 : positions[i];
+			}
+			size = target;
+		}
+	}
+
+	private static final class ResultKey {
+
+		private final PropertyFilterKey filterKey;
+
+		private final Object sortKey;
+
+		private ResultKey(PropertyFilterKey filterKey, Object sortKey) {
+			this.filterKey = filterKey;
+			this.sortKey = sortKey;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o)
+				return true;
+			if (!(o instanceof ResultKey))
+				return false;
+
+			ResultKey that = (ResultKey) o;
+			return filterKey.equals(that.filterKey) && Objects.equals(sortKey, that.sortKey);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(filterKey, sortKey);
+		}
+	}
+}
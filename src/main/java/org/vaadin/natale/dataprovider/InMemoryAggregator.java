@@ -0,0 +1,178 @@
+package org.vaadin.natale.dataprovider;
+
+import org.vaadin.natale.util.PropertyAccessor;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Maintains aggregates of item properties incrementally.<br>
+ * Aggregates are computed by a single pass over items on first request (or after invalidation),
+ * and then updated on each added, removed or updated item, without full rescans.
+ *
+ * @param <T> data type
+ */
+public class InMemoryAggregator<T> {
+
+	// Properties, that were requested at least once, they are recomputed together after invalidation.
+	private final Set<String> trackedProperties = new LinkedHashSet<>();
+
+	private final Map<String, PropertyAggregate> aggregates = new HashMap<>();
+
+	/**
+	 * Get aggregate of the property.
+	 *
+	 * @param propertyName property name.
+	 * @param function     aggregate function.
+	 * @param items        supplier of items to aggregate, used only if aggregates have to be recomputed.
+	 * @return aggregate value, or {@code null} if there are no values to aggregate.
+	 */
+	public Object getAggregate(String propertyName, AggregateFunction function, Supplier<Stream<T>> items) {
+		trackedProperties.add(propertyName);
+
+		if (!aggregates.containsKey(propertyName)) {
+			Map<String, PropertyAggregate> missingAggregates = new HashMap<>();
+			for (String trackedProperty : trackedProperties) {
+				if (!aggregates.containsKey(trackedProperty))
+					missingAggregates.put(trackedProperty, new PropertyAggregate(trackedProperty, true));
+			}
+
+			items.get().forEach(item -> missingAggregates.values().forEach(aggregate -> aggregate.add(item)));
+			aggregates.putAll(missingAggregates);
+		}
+
+		return aggregates.get(propertyName).get(function);
+	}
+
+	public void itemAdded(T item) {
+		aggregates.values().forEach(aggregate -> aggregate.add(item));
+	}
+
+	public void itemRemoved(T item) {
+		aggregates.values().forEach(aggregate -> aggregate.remove(item));
+	}
+
+	/**
+	 * Drop all aggregates, they are recomputed on next request.
+	 */
+	public void invalidate() {
+		aggregates.clear();
+	}
+
+	/**
+	 * Compute aggregate of the property by a single pass over items.
+	 *
+	 * @param items        items to aggregate.
+	 * @param propertyName property name.
+	 * @param function     aggregate function.
+	 * @return aggregate value, or {@code null} if there are no values to aggregate.
+	 */
+	public static Object compute(Stream<?> items, String propertyName, AggregateFunction function) {
+		// Items aren't referenced after the pass, so they can be read from a store one by one.
+		PropertyAggregate aggregate = new PropertyAggregate(propertyName, false);
+		items.forEach(aggregate::add);
+		return aggregate.get(function);
+	}
+
+	private static final class PropertyAggregate {
+
+		private final PropertyAccessor accessor;
+
+		// Aggregated value of each item, to remove it after the item has been changed, or null if items aren't removed.
+		private final Map<Object, Object> values;
+
+		// Comparable values with number of their occurrences, for minimum and maximum.
+		private final TreeMap<Object, Integer> sortedValues = new TreeMap<>();
+
+		private long count;
+
+		private long nonNumberCount;
+
+		private BigDecimal sum = BigDecimal.ZERO;
+
+		private PropertyAggregate(String propertyName, boolean removable) {
+			this.accessor = PropertyAccessor.of(propertyName);
+			this.values = removable ? new IdentityHashMap<>() : null;
+		}
+
+		private void add(Object item) {
+			if (values != null && values.containsKey(item))
+				return;
+
+			Object value = accessor.getValue(item);
+			if (values != null)
+				values.put(item, value);
+			if (value == null)
+				return;
+
+			++count;
+			BigDecimal number = toBigDecimal(value);
+			if (number != null)
+				sum = sum.add(number);
+			else
+				++nonNumberCount;
+
+			if (value instanceof Comparable)
+				sortedValues.merge(value, 1, Integer::sum);
+		}
+
+		private void remove(Object item) {
+			if (!values.containsKey(item))
+				return;
+
+			Object value = values.remove(item);
+			if (value == null)
+				return;
+
+			--count;
+			BigDecimal number = toBigDecimal(value);
+			if (number != null)
+				sum = sum.subtract(number);
+			else
+				--nonNumberCount;
+
+			if (value instanceof Comparable)
+				sortedValues.computeIfPresent(value, (key, occurrences) -> occurrences == 1 ? null : occurrences - 1);
+		}
+
+		private Object get(AggregateFunction function) {
+			switch (function) {
+				case SUM:
+					return count == 0 || nonNumberCount > 0 ? null : sum;
+				case AVG:
+					return count == 0 || nonNumberCount > 0 ? null : sum.divide(BigDecimal.valueOf(count), MathContext.DECIMAL64);
+				case MIN:
+					return sortedValues.isEmpty() ? null : sortedValues.firstKey();
+				case MAX:
+					return sortedValues.isEmpty() ? null : sortedValues.lastKey();
+				case COUNT:
+					return count;
+				default:
+					throw new IllegalArgumentException("Unsupported AggregateFunction - " + function);
+			}
+		}
+
+		private static BigDecimal toBigDecimal(Object value) {
+			if (value instanceof BigDecimal)
+				return (BigDecimal) value;
+			if (value instanceof BigInteger)
+				return new BigDecimal((BigInteger) value);
+			if (value instanceof Double || value instanceof Float) {
+				double doubleValue = ((Number) value).doubleValue();
+				return Double.isNaN(doubleValue) || Double.isInfinite(doubleValue) ? null : BigDecimal.valueOf(doubleValue);
+			}
+			if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+				return BigDecimal.valueOf(((Number) value).longValue());
+			return null;
+		}
+	}
+}
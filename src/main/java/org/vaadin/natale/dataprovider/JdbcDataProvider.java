@@ -0,0 +1,379 @@
+package org.vaadin.natale.dataprovider;
+
+import com.vaadin.data.provider.DataChangeEvent;
+import com.vaadin.data.provider.Query;
+import com.vaadin.data.provider.QuerySortOrder;
+import com.vaadin.server.SerializablePredicate;
+import com.vaadin.shared.data.sort.SortDirection;
+import org.apache.log4j.Logger;
+import org.vaadin.natale.filter.PropertyFilter;
+import org.vaadin.natale.filter.PropertyFilterKey;
+import org.vaadin.natale.util.BeanRowMapper;
+import org.vaadin.natale.util.ObservableHashMap;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.vaadin.natale.filter.PropertyFilterSpecification.toLikePattern;
+
+/**
+ * ConfigurableBackEndDataProvider, that queries a database table directly through JDBC,
+ * without ORM entity hydration.<br>
+ * Only the requested rows are queried: property filters and sort orders are translated to
+ * parameterized SQL, rows are read by a forward-only result set with a fetch size
+ * and mapped to beans by {@link BeanRowMapper}.
+ * <p>
+ * SQL text depends only on the filter properties and modes, not on filter values, so statements
+ * can be reused. The provider doesn't hold connections between requests: each query borrows a connection
+ * from the data source and prepares its statement on it. Use a connection pool with a prepared statement
+ * cache, otherwise statements are parsed again on each query. For example: {@code cachePrepStmts=true}
+ * of MySQL Connector/J, {@code prepareThreshold} of the PostgreSQL driver (server-side statements),
+ * {@code StatementCache} interceptor of Tomcat JDBC pool or {@code maxStatements} of c3p0.
+ * <p>
+ * {@link #forEachItem(Query, Consumer)} reads all rows by a single forward-only result set, instead of pages.
+ * MySQL Connector/J streams the rows only with {@code useCursorFetch=true}.
+ * <p>
+ * <b>Note: </b>the table is paged by {@code LIMIT ? OFFSET ?} (H2, PostgreSQL, MySQL).
+ * In-memory filters (like {@link #setFilter(SerializablePredicate)}) aren't applied.
+ * Items are written to database only by the configured add, update and delete methods.
+ *
+ * @param <T> data type
+ */
+public class JdbcDataProvider<T> extends ConfigurableBackEndDataProvider<T>
+		implements StreamingDataProvider<T, SerializablePredicate<T>> {
+
+	private static final Logger logger = Logger.getLogger(JdbcDataProvider.class);
+
+	private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_.]*");
+
+	private static final char LIKE_ESCAPE_CHAR = '!';
+
+	private static final int DEFAULT_FETCH_SIZE = 500;
+
+	private final DataSource dataSource;
+
+	private final String tableName;
+
+	private final BeanRowMapper<T> rowMapper;
+
+	// Explicit column names by property names, other properties are converted by BeanRowMapper.toColumnName().
+	private final Map<String, String> columnNames = new HashMap<>();
+
+	// Mutable observable map of property filters.
+	// Key - property name (PropertyFilter.getPropertyName()),
+	// Value - PropertyFilter itself.
+	private final ObservableHashMap<String, PropertyFilter> filterMap = new ObservableHashMap<>();
+
+	private int fetchSize = DEFAULT_FETCH_SIZE;
+
+	/**
+	 * Constructs a new JdbcDataProvider.
+	 *
+	 * @param dataSource data source to obtain connections from.
+	 * @param tableName  table (or view) name.
+	 * @param beanType   bean type with public no-arg constructor, that rows are mapped to.
+	 */
+	public JdbcDataProvider(DataSource dataSource, String tableName, Class<T> beanType) {
+		super(new ArrayList<>(), ArrayList::new, null, null, null);
+		this.dataSource = Objects.requireNonNull(dataSource, "DataSource cannot be null");
+		this.tableName = checkIdentifier(tableName);
+		this.rowMapper = new BeanRowMapper<>(beanType);
+		this.isLazy = true;
+
+		// Register a property listener to handle simple changes (put/remove) in map.
+		filterMap.addPropertyChangeListener(event -> fireEvent(new DataChangeEvent<>(this)));
+	}
+
+	/**
+	 * Set column name for the property, if it doesn't match the property name.
+	 *
+	 * @param propertyName property name.
+	 * @param columnName   column name.
+	 * @return current JdbcDataProvider
+	 */
+	public JdbcDataProvider<T> withColumnName(String propertyName, String columnName) {
+		columnNames.put(propertyName, checkIdentifier(columnName));
+		return this;
+	}
+
+	/**
+	 * Set number of rows, fetched from database at once.
+	 *
+	 * @param fetchSize JDBC fetch size.
+	 * @return current JdbcDataProvider
+	 */
+	public JdbcDataProvider<T> withFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+		return this;
+	}
+
+	/**
+	 * Adds a property filter to be applied to all queries.
+	 * The filter replaces a filter of the same property.
+	 *
+	 * @param filter the filter to add, not {@code null}
+	 */
+	public void addPropertyFilter(PropertyFilter filter) {
+		Objects.requireNonNull(filter, "Filter cannot be null");
+		filterMap.put(filter.getPropertyName(), filter);
+
+		// Register a property listener to handle any changes in filter object.
+		filter.addPropertyChangeListener(event -> fireEvent(new DataChangeEvent<>(this)));
+	}
+
+	/**
+	 * Get PropertyFilter by specified property name.<br>
+	 *
+	 * @param propertyName - property name.
+	 * @return PropertyFilter by specified property name.
+	 * @throws NullPointerException if no any {@code PropertyFilter} founded.
+	 */
+	public PropertyFilter getPropertyFilterByPropertyName(String propertyName) {
+		PropertyFilter filter = filterMap.get(propertyName);
+
+		Objects.requireNonNull(filter, "No any PropertyFilter founded by property name: " + propertyName);
+		return filter;
+	}
+
+	/**
+	 * Remove PropertyFilter by specified property name.<br>
+	 *
+	 * @param propertyName - property name.
+	 * @return the previous PropertyFilter object associated with specified property name.
+	 */
+	public PropertyFilter removePropertyFilterByPropertyName(String propertyName) {
+		return filterMap.remove(propertyName);
+	}
+
+	@Override
+	public boolean isInMemory() {
+		return false;
+	}
+
+	@Override
+	public Stream<T> fetch(Query<T, SerializablePredicate<T>> query) {
+		List<Object> parameters = new ArrayList<>();
+		StringBuilder sql = new StringBuilder("SELECT * FROM ").append(tableName);
+		appendWhere(sql, parameters);
+		appendOrderBy(sql, query.getSortOrders());
+		sql.append(" LIMIT ? OFFSET ?");
+		parameters.add(query.getLimit());
+		parameters.add(query.getOffset());
+
+		List<T> items = new ArrayList<>(Math.min(query.getLimit(), fetchSize));
+		try (Connection connection = dataSource.getConnection();
+		     PreparedStatement statement = prepareStatement(connection, sql.toString(), parameters);
+		     ResultSet resultSet = statement.executeQuery()) {
+			while (resultSet.next())
+				items.add(rowMapper.mapRow(resultSet));
+		} catch (SQLException e) {
+			throw queryFailed(sql, e);
+		}
+
+		return trackLoadedItems(items.stream());
+	}
+
+	/**
+	 * Read all rows of current filters in the query sort order by a single forward-only result set.<br>
+	 * Rows aren't tracked by dirty tracking.
+	 *
+	 * @param query  query with sort orders, offset and limit are ignored.
+	 * @param action action for each row.
+	 */
+	@Override
+	public void forEachItem(Query<T, SerializablePredicate<T>> query, Consumer<? super T> action) {
+		List<Object> parameters = new ArrayList<>();
+		StringBuilder sql = new StringBuilder("SELECT * FROM ").append(tableName);
+		appendWhere(sql, parameters);
+		appendOrderBy(sql, query.getSortOrders());
+
+		try (Connection connection = dataSource.getConnection()) {
+			// PostgreSQL driver fetches rows by a cursor only outside of auto-commit mode.
+			boolean autoCommit = connection.getAutoCommit();
+			connection.setAutoCommit(false);
+			try (PreparedStatement statement = prepareStatement(connection, sql.toString(), parameters);
+			     ResultSet resultSet = statement.executeQuery()) {
+				while (resultSet.next())
+					action.accept(rowMapper.mapRow(resultSet));
+			} finally {
+				connection.rollback();
+				connection.setAutoCommit(autoCommit);
+			}
+		} catch (SQLException e) {
+			throw queryFailed(sql, e);
+		}
+	}
+
+	@Override
+	public int size(Query<T, SerializablePredicate<T>> query) {
+		List<Object> parameters = new ArrayList<>();
+		StringBuilder sql = new StringBuilder("SELECT COUNT(*) FROM ").append(tableName);
+		appendWhere(sql, parameters);
+
+		try (Connection connection = dataSource.getConnection();
+		     PreparedStatement statement = prepareStatement(connection, sql.toString(), parameters);
+		     ResultSet resultSet = statement.executeQuery()) {
+			resultSet.next();
+			return resultSet.getInt(1);
+		} catch (SQLException e) {
+			throw queryFailed(sql, e);
+		}
+	}
+
+	/**
+	 * Get aggregate of the property, computed by an aggregate query with current property filters.
+	 *
+	 * @param propertyName property name.
+	 * @param function     aggregate function.
+	 * @return aggregate value, or {@code null} if there are no values to aggregate.
+	 */
+	@Override
+	public Object getAggregate(String propertyName, AggregateFunction function) {
+		String column = getColumnName(propertyName);
+		List<Object> parameters = new ArrayList<>();
+		StringBuilder sql = new StringBuilder("SELECT ")
+				.append(function.name())
+				.append("(").append(column).append(") FROM ").append(tableName);
+		appendWhere(sql, parameters);
+
+		try (Connection connection = dataSource.getConnection();
+		     PreparedStatement statement = prepareStatement(connection, sql.toString(), parameters);
+		     ResultSet resultSet = statement.executeQuery()) {
+			resultSet.next();
+			return resultSet.getObject(1);
+		} catch (SQLException e) {
+			throw queryFailed(sql, e);
+		}
+	}
+
+	@Override
+	public void refreshAll() {
+		onItemsReloaded();
+		fireEvent(new DataChangeEvent<>(this));
+	}
+
+	@Override
+	public void addItem(T item) {
+		writeToBackend(addElementMethod, item);
+		fireEvent(new DataChangeEvent<>(this));
+	}
+
+	@Override
+	public void deleteItem(T item) {
+		writeToBackend(deleteElementMethod, item);
+		onItemRemoved(item);
+		fireEvent(new DataChangeEvent<>(this));
+	}
+
+	@Override
+	protected void applyEntityChange(EntityChangeEvent<T> event) {
+		// Rows are queried on demand, there is nothing to patch.
+		fireEvent(new DataChangeEvent<>(this));
+	}
+
+	@Override
+	protected void getItemsFromBackend() {
+		// Rows are queried on demand.
+	}
+
+	/**
+	 * Get column name of the property.
+	 *
+	 * @param propertyName property name.
+	 * @return column name.
+	 */
+	protected String getColumnName(String propertyName) {
+		String columnName = columnNames.get(propertyName);
+		return columnName != null ? columnName : checkIdentifier(BeanRowMapper.toColumnName(propertyName));
+	}
+
+	private void appendWhere(StringBuilder sql, List<Object> parameters) {
+		String separator = " WHERE ";
+		for (PropertyFilterKey.Entry entry : PropertyFilterKey.of(filterMap.values()).getEntries()) {
+			sql.append(separator);
+			appendCondition(sql, parameters, entry);
+			separator = " AND ";
+		}
+	}
+
+	private void appendCondition(StringBuilder sql, List<Object> parameters, PropertyFilterKey.Entry entry) {
+		String column = getColumnName(entry.getPropertyName());
+		Object value = entry.getFilterValue();
+		// Filter value of ignoreCase entry is already lower case.
+		String stringColumn = entry.isIgnoreCase() ? "LOWER(" + column + ")" : column;
+
+		// PropertyFilter.testProperty() passes all null property values.
+		sql.append("(").append(column).append(" IS NULL OR ");
+		switch (entry.getMode()) {
+			case CONTAINS:
+				sql.append(stringColumn).append(" LIKE ? ESCAPE '").append(LIKE_ESCAPE_CHAR).append("'");
+				value = toLikePattern(value, LIKE_ESCAPE_CHAR);
+				break;
+			case NOT_CONTAINS:
+				sql.append(stringColumn).append(" NOT LIKE ? ESCAPE '").append(LIKE_ESCAPE_CHAR).append("'");
+				value = toLikePattern(value, LIKE_ESCAPE_CHAR);
+				break;
+			case EQUALS:
+				sql.append(value instanceof String ? stringColumn : column).append(" = ?");
+				break;
+			case NOT_EQUALS:
+				sql.append(value instanceof String ? stringColumn : column).append(" <> ?");
+				break;
+			case GREATER:
+				sql.append(column).append(" > ?");
+				break;
+			case SMALLER:
+				sql.append(column).append(" < ?");
+				break;
+			case GREATER_OR_EQUAL:
+				sql.append(column).append(" >= ?");
+				break;
+			case SMALLER_OR_EQUAL:
+				sql.append(column).append(" <= ?");
+				break;
+		}
+		sql.append(")");
+		parameters.add(value);
+	}
+
+	private void appendOrderBy(StringBuilder sql, List<QuerySortOrder> sortOrders) {
+		String separator = " ORDER BY ";
+		for (QuerySortOrder order : sortOrders) {
+			sql.append(separator)
+					.append(getColumnName(order.getSorted()))
+					.append(order.getDirection() == SortDirection.ASCENDING ? " ASC" : " DESC");
+			separator = ", ";
+		}
+	}
+
+	private PreparedStatement prepareStatement(Connection connection, String sql, List<Object> parameters) throws SQLException {
+		PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		statement.setFetchSize(fetchSize);
+		for (int i = 0; i < parameters.size(); ++i)
+			statement.setObject(i + 1, parameters.get(i));
+		return statement;
+	}
+
+	private RuntimeException queryFailed(CharSequence sql, SQLException e) {
+		String errorMessage = "Couldn't query table [" + tableName + "]: " + sql;
+		logger.error(errorMessage, e);
+		return new RuntimeException(errorMessage, e);
+	}
+
+	private static String checkIdentifier(String identifier) {
+		if (identifier == null || !IDENTIFIER.matcher(identifier).matches())
+			throw new IllegalArgumentException("Illegal SQL identifier - " + identifier);
+		return identifier;
+	}
+}
@@ -1,15 +1,541 @@
 package org.vaadin.natale.dataprovider;
 
+import com.vaadin.data.provider.DataChangeEvent;
+import com.vaadin.data.provider.Query;
+import com.vaadin.data.provider.QuerySortOrder;
+import com.vaadin.server.SerializablePredicate;
+import com.vaadin.shared.data.sort.SortDirection;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.apache.log4j.Logger;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.vaadin.natale.filter.PropertyFilterSpecification;
+import org.vaadin.natale.util.PropertyAccessor;
+import org.vaadin.natale.util.RetainedSizeEstimator;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.EntityType;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Creates a new ConfigurableBackEndDataProvider for JpaRepository.
+ * <p>
+ * By default all entities are held in memory. With a {@link PageCache} the provider
+ * works in paged mode: only requested pages are queried from repository and cached.
+ * If a {@link MemoryBudget} is exceeded, the provider switches to paged mode automatically.
  *
  * @param <T> data type
  */
-public class JpaDataProvider<T> extends ConfigurableBackEndDataProvider<T> {
+public class JpaDataProvider<T> extends ConfigurableBackEndDataProvider<T>
+		implements StreamingDataProvider<T, SerializablePredicate<T>> {
+
+	private static final Logger logger = Logger.getLogger(JpaDataProvider.class);
+
+	// Page size, used when memory budget switches the provider to paged mode.
+	private static final int BUDGET_PAGE_SIZE = 100;
+
+	// Number of entities, queried at once by forEachItem().
+	private static final int STREAM_CHUNK_SIZE = 1000;
+
+	protected transient JpaRepository<T, ?> repository;
+
+	protected PageCache<T> pageCache;
+
+	private boolean changingFilter;
+
+	// Used for aggregate queries, if set.
+	protected EntityManager entityManager;
+
+	protected Class<T> entityType;
 
 	public JpaDataProvider(JpaRepository<T, ?> repository) {
 		super(repository::findAll, repository::save, repository::delete, repository::save);
+		this.repository = repository;
+	}
+
+	/**
+	 * Constructs a new JpaDataProvider with memory budget, that is checked before entities are loaded.<br>
+	 * If it would be exceeded, the provider starts in paged mode.
+	 * In lazy mode the budget is checked the same way on each reload, otherwise while entities are added.
+	 *
+	 * @param repository   repository to obtain data from.
+	 * @param memoryBudget memory budget, or {@code null} to hold all entities in memory.
+	 * @see #withMemoryBudget(MemoryBudget)
+	 */
+	public JpaDataProvider(JpaRepository<T, ?> repository, MemoryBudget memoryBudget) {
+		super(new ArrayList<>(), repository::findAll, repository::save, repository::delete, repository::save);
+		this.repository = repository;
+		this.memoryBudget = memoryBudget;
+		if (!exceedsMemoryBudget())
+			getItemsFromBackend();
+	}
+
+	/**
+	 * Constructs a new JpaDataProvider in paged mode, without loading all entities.
+	 *
+	 * @param repository repository to obtain data from.
+	 * @param pageCache  cache for loaded pages.
+	 * @see #withPageCache(PageCache)
+	 */
+	public JpaDataProvider(JpaRepository<T, ?> repository, PageCache<T> pageCache) {
+		super(new ArrayList<>(), repository::findAll, repository::save, repository::delete, repository::save);
+		this.repository = repository;
+		this.pageCache = pageCache;
+		if (pageCache != null)
+			checkSpecificationExecutor();
+	}
+
+	/**
+	 * Switch current provider to paged mode with specified page cache.<br>
+	 * Entities are queried page by page, using sort orders of the query.
+	 * <p>
+	 * <b>Note: </b>in-memory filters (like {@link #setFilter(SerializablePredicate)}) aren't applied
+	 * in paged mode. Filters are applied only through {@link #getSpecification()},
+	 * if repository is a {@link JpaSpecificationExecutor}.
+	 *
+	 * @param pageCache cache for loaded pages, or {@code null} to load all entities into memory again.
+	 * @return current JpaDataProvider
+	 * @throws RuntimeException if filters of current provider require a {@link JpaSpecificationExecutor},
+	 *                          but repository isn't one.
+	 */
+	public JpaDataProvider<T> withPageCache(PageCache<T> pageCache) {
+		if (pageCache != null)
+			checkSpecificationExecutor();
+
+		this.pageCache = pageCache;
+
+		if (isPaged())
+			getItems().clear();
+		else
+			getItemsFromBackend();
+
+		fireEvent(new DataChangeEvent<>(this));
+		return this;
+	}
+
+	public boolean isPaged() {
+		return pageCache != null;
+	}
+
+	/**
+	 * Set entity manager to compute aggregates by database queries, instead of in memory.
+	 *
+	 * @param entityManager entity manager (for example, shared by {@code @PersistenceContext}).
+	 * @param entityType    entity type of the repository.
+	 * @return current JpaDataProvider
+	 * @see #getAggregate(String, AggregateFunction)
+	 */
+	public JpaDataProvider<T> withEntityManager(EntityManager entityManager, Class<T> entityType) {
+		this.entityManager = entityManager;
+		this.entityType = entityType;
+		return this;
+	}
+
+	@Override
+	public boolean isInMemory() {
+		return !isPaged();
+	}
+
+	/**
+	 * Get aggregate of property values of all entities, that pass the current filter.<br>
+	 * If entity manager is set, the aggregate is computed by a database query with {@link #getSpecification()}.
+	 * Otherwise it's maintained in memory, which isn't possible in paged mode.
+	 *
+	 * @param propertyName property name.
+	 * @param function     aggregate function.
+	 * @return aggregate value, or {@code null} if there are no values to aggregate.
+	 * @see #withEntityManager(EntityManager, Class)
+	 */
+	@Override
+	public Object getAggregate(String propertyName, AggregateFunction function) {
+		if (entityManager != null && (!isInMemory() || isFilteredInBackend()))
+			return queryAggregate(propertyName, function);
+
+		return isInMemory() ? super.getAggregate(propertyName, function) : null;
+	}
+
+	@Override
+	public Stream<T> fetch(Query<T, SerializablePredicate<T>> query) {
+		if (!isPaged())
+			return super.fetch(query);
+
+		Sort sort = toSort(query.getSortOrders());
+		Specification<T> specification = getSpecification();
+
+		return trackLoadedItems(pageCache.fetch(getFilterKey(), sort, query.getOffset(), query.getLimit(), size(query),
+				(pageIndex, pageSize) -> findPage(specification, new PageRequest(pageIndex, pageSize, sort))));
+	}
+
+	/**
+	 * Pass all entities of current filter to the action in the query sort order, bypassing the page cache.<br>
+	 * In paged mode entities are queried in chunks by keyset paging (ordered by sort orders and entity id,
+	 * each chunk continues after the last entity of the previous one), if entity manager is set.
+	 * Otherwise chunks are queried by offset.
+	 *
+	 * @param query  query with sort orders, offset and limit are ignored.
+	 * @param action action for each entity.
+	 * @see #withEntityManager(EntityManager, Class)
+	 */
+	@Override
+	public void forEachItem(Query<T, SerializablePredicate<T>> query, Consumer<? super T> action) {
+		if (!isPaged()) {
+			super.fetch(new Query<>(0, Integer.MAX_VALUE, query.getSortOrders(), query.getInMemorySorting(), query.getFilter().orElse(null)))
+					.forEach(action);
+			return;
+		}
+
+		Specification<T> specification = getSpecification();
+		if (entityManager != null) {
+			forEachEntityByKeyset(specification, query.getSortOrders(), action);
+			return;
+		}
+
+		Sort sort = toSort(query.getSortOrders());
+		for (int pageIndex = 0; ; ++pageIndex) {
+			List<T> entities = findPage(specification, new PageRequest(pageIndex, STREAM_CHUNK_SIZE, sort));
+			entities.forEach(action);
+			if (entities.size() < STREAM_CHUNK_SIZE)
+				return;
+		}
+	}
+
+	@Override
+	public int size(Query<T, SerializablePredicate<T>> query) {
+		if (!isPaged())
+			return super.size(query);
+
+		Specification<T> specification = getSpecification();
+		return pageCache.size(getFilterKey(), () -> (int) count(specification));
+	}
+
+	@Override
+	public void setFilter(SerializablePredicate<T> filter) {
+		changingFilter = true;
+		try {
+			super.setFilter(filter);
+		} finally {
+			changingFilter = false;
+		}
+	}
+
+	@Override
+	public void refreshAll() {
+		if (isPaged()) {
+			// Pages are keyed by filter state, so a filter change only switches to other pages.
+			if (changingFilter) {
+				fireEvent(new DataChangeEvent<>(this));
+				return;
+			}
+			invalidatePages();
+		}
+		super.refreshAll();
+	}
+
+	@Override
+	public void addItem(T item) {
+		if (!isPaged()) {
+			super.addItem(item);
+			return;
+		}
+
+		writeToBackend(addElementMethod, item);
+		invalidatePages();
+		fireEvent(new DataChangeEvent<>(this));
+	}
+
+	@Override
+	public void deleteItem(T item) {
+		if (!isPaged()) {
+			super.deleteItem(item);
+			return;
+		}
+
+		writeToBackend(deleteElementMethod, item);
+		invalidatePages();
+		fireEvent(new DataChangeEvent<>(this));
+	}
+
+	@Override
+	protected void applyEntityChange(EntityChangeEvent<T> event) {
+		if (!isPaged()) {
+			super.applyEntityChange(event);
+			return;
+		}
+
+		// Position of the changed entity in current sort and filter state is unknown, so reload pages on demand.
+		invalidatePages();
+		fireEvent(new DataChangeEvent<>(this));
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	protected T loadEntity(Object id) {
+		return ((JpaRepository<T, Serializable>) repository).findOne((Serializable) id);
+	}
+
+	@Override
+	protected void getItemsFromBackend() {
+		// Nothing is held in memory in paged mode.
+		if (isPaged())
+			return;
+
+		// Non-lazy mode reloads entities on every fetch, so the budget is only checked while they are added.
+		if (isLazy && exceedsMemoryBudget())
+			return;
+
+		super.getItemsFromBackend();
+	}
+
+	// Entities aren't loaded at all, if their count or their size estimated by the first page already exceeds the budget.
+	private boolean exceedsMemoryBudget() {
+		if (memoryBudget == null)
+			return false;
+
+		long count = repository.count();
+		if (count > memoryBudget.getMaxRows()) {
+			memoryBudget.exceeded(getClass().getSimpleName(), count, -1, 0);
+			switchToBudgetPagedMode();
+			return true;
+		}
+
+		if (memoryBudget.getMaxBytes() < Long.MAX_VALUE && count > BUDGET_PAGE_SIZE) {
+			List<T> sample = repository.findAll(new PageRequest(0, BUDGET_PAGE_SIZE)).getContent();
+			long estimatedBytes = memoryBudget.estimateBytes(sample, count);
+			if (estimatedBytes > memoryBudget.getMaxBytes()) {
+				memoryBudget.exceeded(getClass().getSimpleName(), count, estimatedBytes, 0);
+				switchToBudgetPagedMode();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Switches to paged mode with a page cache within the memory budget, instead of spilling entities.
+	 *
+	 * @param coldItems entities after the entities in memory, they are queried by pages instead.
+	 */
+	@Override
+	protected void onMemoryBudgetExceeded(Iterator<T> coldItems) {
+		switchToBudgetPagedMode();
+	}
+
+	private void switchToBudgetPagedMode() {
+		if (isFilteredBySpecification() && !(repository instanceof JpaSpecificationExecutor))
+			logger.error("Repository of [" + getClass().getSimpleName() + "] isn't a JpaSpecificationExecutor, filters aren't applied in paged mode");
+		else if (getFilter() != null)
+			logger.warn("In-memory filter of [" + getClass().getSimpleName() + "] isn't applied in paged mode, use a Specification instead");
+
+		pageCache = new PageCache<>(BUDGET_PAGE_SIZE, Math.max(1, memoryBudget.getMaxRows() / BUDGET_PAGE_SIZE),
+				memoryBudget.getMaxBytes(), RetainedSizeEstimator::estimate);
+
+		getItems().clear();
+		if (getItems() instanceof ArrayList)
+			((ArrayList<T>) getItems()).trimToSize();
+		invalidatePages();
+	}
+
+	/**
+	 * Drop all cached pages, together with snapshots of their entities.
+	 */
+	protected void invalidatePages() {
+		onItemsReloaded();
+		pageCache.invalidate();
+	}
+
+	/**
+	 * Get specification to filter entities in paged mode.
+	 *
+	 * @return specification, or {@code null} to query all entities.
+	 */
+	protected Specification<T> getSpecification() {
+		return null;
+	}
+
+	/**
+	 * Checks if filters of current provider are applied in paged mode by {@link #getSpecification()},
+	 * so repository has to be a {@link JpaSpecificationExecutor}.
+	 *
+	 * @return {@code true} if paged mode requires a specification executor.
+	 */
+	protected boolean isFilteredBySpecification() {
+		return false;
+	}
+
+	// Otherwise findPage() and count() would silently query all entities.
+	private void checkSpecificationExecutor() {
+		if (!isFilteredBySpecification() || repository instanceof JpaSpecificationExecutor)
+			return;
+
+		String errorMessage = "Repository of [" + getClass().getSimpleName() + "] has to be a JpaSpecificationExecutor"
+				+ " to apply filters in paged mode";
+		logger.error(errorMessage);
+		throw new RuntimeException(errorMessage);
+	}
+
+	/**
+	 * Checks if the in-memory filter of current provider selects the same entities as {@link #getSpecification()}.
+	 *
+	 * @return {@code true} if aggregate queries can be used instead of in-memory aggregates.
+	 */
+	protected boolean isFilteredInBackend() {
+		return getFilter() == null;
+	}
+
+	/**
+	 * Get hashable representation of the filter state, returned by {@link #getSpecification()}.
+	 *
+	 * @return filter state key, or {@code null} if there is no filter.
+	 */
+	protected Object getFilterKey() {
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	protected List<T> findPage(Specification<T> specification, Pageable pageable) {
+		if (specification != null && repository instanceof JpaSpecificationExecutor)
+			return ((JpaSpecificationExecutor<T>) repository).findAll(specification, pageable).getContent();
+
+		return repository.findAll(pageable).getContent();
+	}
+
+	@SuppressWarnings("unchecked")
+	protected long count(Specification<T> specification) {
+		if (specification != null && repository instanceof JpaSpecificationExecutor)
+			return ((JpaSpecificationExecutor<T>) repository).count(specification);
+
+		return repository.count();
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	protected Object queryAggregate(String propertyName, AggregateFunction function) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Object> query = cb.createQuery(Object.class);
+		Root<T> root = query.from(entityType);
+		Expression path = PropertyFilterSpecification.getPath(root, propertyName);
+
+		switch (function) {
+			case SUM:
+				query.select(cb.sum(path));
+				break;
+			case AVG:
+				query.select(cb.avg(path));
+				break;
+			case MIN:
+				query.select(cb.least(path));
+				break;
+			case MAX:
+				query.select(cb.greatest(path));
+				break;
+			case COUNT:
+				query.select(cb.count(path));
+				break;
+		}
+
+		Specification<T> specification = getSpecification();
+		if (specification != null) {
+			Predicate predicate = specification.toPredicate(root, query, cb);
+			if (predicate != null)
+				query.where(predicate);
+		}
+
+		return entityManager.createQuery(query).getSingleResult();
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private void forEachEntityByKeyset(Specification<T> specification, List<QuerySortOrder> sortOrders, Consumer<? super T> action) {
+		EntityType<T> entityModel = entityManager.getMetamodel().entity(entityType);
+		String idName = entityModel.getId(entityModel.getIdType().getJavaType()).getName();
+		PersistenceUnitUtil persistenceUnitUtil = entityManager.getEntityManagerFactory().getPersistenceUnitUtil();
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+
+		// Sort values and id of the last entity of the previous chunk.
+		Object[] lastSortValues = null;
+		Object lastId = null;
+
+		while (true) {
+			CriteriaQuery<T> criteria = cb.createQuery(entityType);
+			Root<T> root = criteria.from(entityType);
+			Expression idPath = root.get(idName);
+
+			List<Predicate> predicates = new ArrayList<>();
+			if (specification != null) {
+				Predicate predicate = specification.toPredicate(root, criteria, cb);
+				if (predicate != null)
+					predicates.add(predicate);
+			}
+
+			// Nulls are ordered last explicitly, as the default null ordering depends on database.
+			List<Order> orders = new ArrayList<>();
+			Expression[] sortPaths = new Expression[sortOrders.size()];
+			for (int i = 0; i < sortPaths.length; ++i) {
+				sortPaths[i] = PropertyFilterSpecification.getPath(root, sortOrders.get(i).getSorted());
+				orders.add(cb.asc(cb.selectCase().when(cb.isNull(sortPaths[i]), 1).otherwise(0)));
+				orders.add(sortOrders.get(i).getDirection() == SortDirection.ASCENDING ? cb.asc(sortPaths[i]) : cb.desc(sortPaths[i]));
+			}
+			orders.add(cb.asc(idPath));
+
+			if (lastSortValues != null) {
+				// Entities after the last one: (s1 after v1) or (s1 = v1 and ((s2 after v2) or (... and id > lastId))).
+				Predicate after = cb.greaterThan(idPath, (Comparable) lastId);
+				for (int i = sortPaths.length - 1; i >= 0; --i) {
+					Object value = lastSortValues[i];
+					if (value == null) {
+						after = cb.and(cb.isNull(sortPaths[i]), after);
+					} else {
+						Predicate greater = sortOrders.get(i).getDirection() == SortDirection.ASCENDING ?
+								cb.greaterThan(sortPaths[i], (Comparable) value)
+								: cb.lessThan(sortPaths[i], (Comparable) value);
+						after = cb.or(cb.isNull(sortPaths[i]), greater, cb.and(cb.equal(sortPaths[i], value), after));
+					}
+				}
+				predicates.add(after);
+			}
+
+			criteria.where(predicates.toArray(new Predicate[predicates.size()])).orderBy(orders);
+			List<T> entities = entityManager.createQuery(criteria).setMaxResults(STREAM_CHUNK_SIZE).getResultList();
+			entities.forEach(action);
+			if (entities.size() < STREAM_CHUNK_SIZE)
+				return;
+
+			T last = entities.get(entities.size() - 1);
+			lastSortValues = new Object[sortPaths.length];
+			for (int i = 0; i < sortPaths.length; ++i)
+				lastSortValues[i] = PropertyAccessor.of(sortOrders.get(i).getSorted()).getValue(last);
+			lastId = persistenceUnitUtil.getIdentifier(last);
+		}
+	}
+
+	/**
+	 * Converts query sort orders to Spring Data sort.
+	 *
+	 * @param sortOrders query sort orders, property names are used as sorted values.
+	 * @return Spring Data sort, or {@code null} if there are no sort orders.
+	 */
+	protected static Sort toSort(List<QuerySortOrder> sortOrders) {
+		if (sortOrders.isEmpty())
+			return null;
+
+		return new Sort(sortOrders.stream()
+				.map(order -> new Sort.Order(
+						order.getDirection() == SortDirection.ASCENDING ? Sort.Direction.ASC : Sort.Direction.DESC,
+						order.getSorted()))
+				.collect(Collectors.toList()));
 	}
 }
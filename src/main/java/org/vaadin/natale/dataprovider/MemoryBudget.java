@@ -0,0 +1,192 @@
+package org.vaadin.natale.dataprovider;
+
+import org.apache.log4j.Logger;
+import org.vaadin.natale.util.RetainedSizeEstimator;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits number of rows and estimated retained size of items, that a data provider holds in memory.<br>
+ * Sizes are estimated by {@link RetainedSizeEstimator}: the first items are measured one by one,
+ * then every {@link #SAMPLE_INTERVAL}-th item is measured, and the average is used for the others.
+ * <p>
+ * Each exceeded budget is logged as a warning and counted by {@link #getExceededCount()},
+ * which can be exposed by a monitoring system.
+ *
+ * @see ConfigurableBackEndDataProvider#withMemoryBudget(MemoryBudget)
+ */
+public class MemoryBudget implements Serializable {
+
+	private static final Logger logger = Logger.getLogger(MemoryBudget.class);
+
+	private static final int MEASURED_FIRST_ITEMS = 64;
+
+	/**
+	 * Interval of measured items, after the first items have been measured.
+	 */
+	public static final int SAMPLE_INTERVAL = 32;
+
+	private static final AtomicLong exceededCount = new AtomicLong();
+
+	private final long maxBytes;
+
+	private final int maxRows;
+
+	/**
+	 * Creates a new MemoryBudget.
+	 *
+	 * @param maxBytes maximum estimated retained size of items in bytes.
+	 * @param maxRows  maximum number of items.
+	 */
+	public MemoryBudget(long maxBytes, int maxRows) {
+		if (maxBytes < 1 || maxRows < 1)
+			throw new IllegalArgumentException("Memory budget must be positive, but maxBytes = " + maxBytes + ", maxRows = " + maxRows);
+
+		this.maxBytes = maxBytes;
+		this.maxRows = maxRows;
+	}
+
+	public static MemoryBudget ofBytes(long maxBytes) {
+		return new MemoryBudget(maxBytes, Integer.MAX_VALUE);
+	}
+
+	public static MemoryBudget ofRows(int maxRows) {
+		return new MemoryBudget(Long.MAX_VALUE, maxRows);
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	public int getMaxRows() {
+		return maxRows;
+	}
+
+	/**
+	 * Get number of exceeded budgets of all data providers since JVM start.
+	 *
+	 * @return number of exceeded budgets.
+	 */
+	public static long getExceededCount() {
+		return exceededCount.get();
+	}
+
+	/**
+	 * Estimate items in iteration order, until the budget is exceeded.
+	 *
+	 * @param items  items to check.
+	 * @param source name of checking data provider, for the warning.
+	 * @return number of the first items, that fit into the budget, or {@code -1} if all items fit.
+	 */
+	public int findOverflowIndex(Collection<?> items, String source) {
+		Usage usage = newUsage();
+		for (Object item : items) {
+			if (!usage.add(item)) {
+				exceeded(source, items.size(), usage.getEstimatedBytes(), usage.getRows());
+				return usage.getRows();
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Create a meter to check items one by one, for example while they are loaded.
+	 *
+	 * @return new empty usage of current budget.
+	 */
+	public Usage newUsage() {
+		return new Usage();
+	}
+
+	/**
+	 * Estimate retained size of all rows by the average size of sample rows, without loading all rows.
+	 *
+	 * @param sample sample rows (for example, the first page).
+	 * @param rows   number of all rows.
+	 * @return estimated size of all rows in bytes, or {@code 0} if the sample is empty.
+	 */
+	public long estimateBytes(Collection<?> sample, long rows) {
+		if (sample.isEmpty())
+			return 0;
+
+		long sampleBytes = 0;
+		for (Object item : sample)
+			sampleBytes += RetainedSizeEstimator.estimate(item);
+		return sampleBytes / sample.size() * rows;
+	}
+
+	/**
+	 * Log and count an exceeded budget.
+	 *
+	 * @param source         name of data provider.
+	 * @param rows           number of loaded rows.
+	 * @param estimatedBytes estimated size of the rows up to the overflow, or {@code -1} if not estimated.
+	 * @param inMemoryRows   number of rows, that are kept in memory.
+	 */
+	public void exceeded(String source, long rows, long estimatedBytes, int inMemoryRows) {
+		exceededCount.incrementAndGet();
+		logger.warn("Memory budget exceeded by [" + source + "]: " + rows + " rows loaded"
+				+ (estimatedBytes < 0 ? "" : ", ~" + estimatedBytes + " bytes estimated at row " + inMemoryRows)
+				+ " (budget: " + maxRows + " rows, " + maxBytes + " bytes)");
+	}
+
+	/**
+	 * Estimated size of items, that are added one by one.
+	 */
+	public final class Usage {
+
+		private long estimatedBytes;
+
+		private long measuredBytes;
+
+		private int measuredItems;
+
+		private int rows;
+
+		private Usage() {
+		}
+
+		/**
+		 * Add the item, if it fits into the budget.
+		 *
+		 * @param item item to add.
+		 * @return {@code false} if the item exceeds the budget, it isn't counted as a row then.
+		 */
+		public boolean add(Object item) {
+			if (rows >= maxRows)
+				return false;
+
+			long itemBytes;
+			if (rows < MEASURED_FIRST_ITEMS || rows % SAMPLE_INTERVAL == 0) {
+				itemBytes = RetainedSizeEstimator.estimate(item);
+				measuredBytes += itemBytes;
+				++measuredItems;
+			} else {
+				itemBytes = measuredBytes / measuredItems;
+			}
+
+			estimatedBytes += itemBytes;
+			if (estimatedBytes > maxBytes)
+				return false;
+
+			++rows;
+			return true;
+		}
+
+		/**
+		 * @return estimated size of added items, including the item, that exceeded the budget.
+		 */
+		public long getEstimatedBytes() {
+			return estimatedBytes;
+		}
+
+		/**
+		 * @return number of added items, that fit into the budget.
+		 */
+		public int getRows() {
+			return rows;
+		}
+	}
+}
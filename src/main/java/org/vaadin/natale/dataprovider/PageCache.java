@@ -0,0 +1,334 @@
+package org.vaadin.natale.dataprovider;
+
+import org.apache.log4j.Logger;
+import org.vaadin.natale.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+/**
+ * Bounded cache of backend pages for paged data providers.<br>
+ * Pages are keyed by filter state, sort state and page index and evicted in LRU order,
+ * when the page count or the estimated memory budget is exceeded.<br>
+ * Each fetch detects the scroll direction and prefetches next pages in that direction
+ * in background, so fast scrolling mostly hits the cache.
+ * <p>
+ * By default prefetching runs on a small shared daemon pool, its threads are stopped when idle.
+ * Applications, that manage their own threads (like a container-managed executor),
+ * should set it by {@link #withPrefetchExecutor(Executor)}.
+ *
+ * @param <T> data type
+ */
+public class PageCache<T> {
+
+	private static final Logger logger = Logger.getLogger(PageCache.class);
+
+	/**
+	 * Estimated size of one item in bytes, used if no item size estimator is specified.
+	 */
+	public static final long DEFAULT_ITEM_SIZE = 1024;
+
+	private static final int DEFAULT_PREFETCH_PAGES = 2;
+
+	private static final int MAX_CACHED_COUNTS = 16;
+
+	private static final int PREFETCH_THREADS = 2;
+
+	private static final int MAX_QUEUED_PREFETCHES = 16;
+
+	private static final long PREFETCH_THREAD_KEEP_ALIVE_SECONDS = 30;
+
+	// Shared between all caches. If the queue is full, the oldest prefetch is discarded,
+	// as the user has most likely scrolled away from it.
+	private static final ThreadPoolExecutor PREFETCH_EXECUTOR = createPrefetchExecutor();
+
+	/**
+	 * Loads a single page from backend.
+	 *
+	 * @param <T> data type
+	 */
+	@FunctionalInterface
+	public interface PageLoader<T> {
+		List<T> loadPage(int pageIndex, int pageSize);
+	}
+
+	private final int pageSize;
+
+	private final LruCache<PageKey, List<T>> pages;
+
+	private final LruCache<Object, Integer> counts = new LruCache<>(MAX_CACHED_COUNTS);
+
+	private final Set<PageKey> pendingPrefetches = ConcurrentHashMap.newKeySet();
+
+	// Incremented on each invalidation, so prefetches started before it are dropped.
+	private final AtomicInteger generation = new AtomicInteger();
+
+	private int prefetchPages = DEFAULT_PREFETCH_PAGES;
+
+	private Executor prefetchExecutor = PREFETCH_EXECUTOR;
+
+	private volatile PageKey lastRequestedPage;
+
+	/**
+	 * Creates a new PageCache, that estimates each item as {@link #DEFAULT_ITEM_SIZE} bytes.
+	 *
+	 * @param pageSize       number of items per page.
+	 * @param maxPages       maximum number of cached pages.
+	 * @param maxMemoryBytes maximum estimated size of all cached pages in bytes.
+	 */
+	public PageCache(int pageSize, int maxPages, long maxMemoryBytes) {
+		this(pageSize, maxPages, maxMemoryBytes, item -> DEFAULT_ITEM_SIZE);
+	}
+
+	/**
+	 * Creates a new PageCache.
+	 *
+	 * @param pageSize          number of items per page.
+	 * @param maxPages          maximum number of cached pages.
+	 * @param maxMemoryBytes    maximum estimated size of all cached pages in bytes.
+	 * @param itemSizeEstimator function to estimate size of a single item in bytes.
+	 */
+	public PageCache(int pageSize, int maxPages, long maxMemoryBytes, ToLongFunction<T> itemSizeEstimator) {
+		if (pageSize < 1)
+			throw new IllegalArgumentException("Page size must be positive, but pageSize = " + pageSize);
+
+		this.pageSize = pageSize;
+		this.pages = new LruCache<>(maxPages, maxMemoryBytes, page -> page.stream().mapToLong(itemSizeEstimator).sum());
+	}
+
+	/**
+	 * Get items in specified range, loading missing pages from backend.<br>
+	 * Triggers background prefetching of next pages in the scroll direction.
+	 *
+	 * @param filterKey hashable representation of current filter state.
+	 * @param sortKey   hashable representation of current sort state.
+	 * @param offset    index of the first item.
+	 * @param limit     maximum number of items.
+	 * @param totalSize number of all items for current filter state.
+	 * @param loader    loader for missing pages.
+	 * @return items in specified range.
+	 */
+	public Stream<T> fetch(Object filterKey, Object sortKey, int offset, int limit, int totalSize, PageLoader<T> loader) {
+		int end = (int) Math.min((long) offset + limit, totalSize);
+		if (offset >= end)
+			return Stream.empty();
+
+		int firstPage = offset / pageSize;
+		int lastPage = (end - 1) / pageSize;
+
+		List<T> items = new ArrayList<>(end - offset);
+		for (int pageIndex = firstPage; pageIndex <= lastPage; ++pageIndex) {
+			List<T> page = getPage(new PageKey(filterKey, sortKey, pageIndex), loader);
+
+			int pageOffset = pageIndex * pageSize;
+			int from = Math.max(offset - pageOffset, 0);
+			int to = Math.min(end - pageOffset, page.size());
+			if (from < to)
+				items.addAll(page.subList(from, to));
+		}
+
+		prefetch(new PageKey(filterKey, sortKey, firstPage), lastPage, (totalSize - 1) / pageSize, loader);
+		return items.stream();
+	}
+
+	/**
+	 * Get number of items for specified filter state, counting them in backend if it isn't cached.
+	 *
+	 * @param filterKey hashable representation of current filter state.
+	 * @param counter   backend count method.
+	 * @return number of items.
+	 */
+	public int size(Object filterKey, IntSupplier counter) {
+		Integer count = counts.get(filterKey);
+		if (count == null) {
+			count = counter.getAsInt();
+			counts.put(filterKey, count);
+		}
+		return count;
+	}
+
+	/**
+	 * Remove all cached pages and counts, and drop the results of running prefetches.
+	 */
+	public void invalidate() {
+		generation.incrementAndGet();
+		pages.clear();
+		counts.clear();
+		lastRequestedPage = null;
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	public int getPrefetchPages() {
+		return prefetchPages;
+	}
+
+	/**
+	 * Set number of pages, that are prefetched in scroll direction after each fetch.
+	 *
+	 * @param prefetchPages number of pages to prefetch, {@code 0} disables prefetching.
+	 * @return current PageCache
+	 */
+	public PageCache<T> withPrefetchPages(int prefetchPages) {
+		this.prefetchPages = prefetchPages;
+		return this;
+	}
+
+	/**
+	 * Set executor to run prefetching on, instead of the shared daemon pool.<br>
+	 * The executor is managed by the caller, it isn't shut down by the cache.
+	 * Prefetches, rejected by the executor, are skipped.
+	 *
+	 * @param prefetchExecutor executor for prefetching.
+	 * @return current PageCache
+	 */
+	public PageCache<T> withPrefetchExecutor(Executor prefetchExecutor) {
+		this.prefetchExecutor = Objects.requireNonNull(prefetchExecutor, "Prefetch executor cannot be null");
+		return this;
+	}
+
+	private List<T> getPage(PageKey key, PageLoader<T> loader) {
+		List<T> page = pages.get(key);
+		if (page == null) {
+			page = loader.loadPage(key.pageIndex, pageSize);
+			pages.put(key, page);
+		}
+		return page;
+	}
+
+	private void prefetch(PageKey firstRequestedPage, int lastPage, int maxPage, PageLoader<T> loader) {
+		PageKey previous = lastRequestedPage;
+		lastRequestedPage = firstRequestedPage;
+
+		if (prefetchPages < 1)
+			return;
+
+		// Scroll forward by default, backward only if the user moves up in the same filter and sort state.
+		boolean backward = previous != null
+				&& previous.hasSameState(firstRequestedPage)
+				&& firstRequestedPage.pageIndex < previous.pageIndex;
+
+		int from = backward ? Math.max(firstRequestedPage.pageIndex - prefetchPages, 0) : lastPage + 1;
+		int to = backward ? firstRequestedPage.pageIndex - 1 : Math.min(lastPage + prefetchPages, maxPage);
+
+		int currentGeneration = generation.get();
+		for (int pageIndex = from; pageIndex <= to; ++pageIndex) {
+			PageKey key = new PageKey(firstRequestedPage.filterKey, firstRequestedPage.sortKey, pageIndex);
+			if (pages.containsKey(key) || !pendingPrefetches.add(key))
+				continue;
+
+			try {
+				prefetchExecutor.execute(new PrefetchTask(key, loader, currentGeneration));
+			} catch (RejectedExecutionException e) {
+				pendingPrefetches.remove(key);
+				logger.debug("Prefetch of page " + key.pageIndex + " is rejected", e);
+			}
+		}
+	}
+
+	private static ThreadPoolExecutor createPrefetchExecutor() {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(PREFETCH_THREADS, PREFETCH_THREADS,
+				PREFETCH_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new ArrayBlockingQueue<>(MAX_QUEUED_PREFETCHES),
+				runnable -> {
+					Thread thread = new Thread(runnable, "natale-page-prefetch");
+					thread.setDaemon(true);
+					return thread;
+				},
+				(task, pool) -> {
+					if (pool.isShutdown()) {
+						discard(task);
+						return;
+					}
+					discard(pool.getQueue().poll());
+					pool.execute(task);
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	private static void discard(Runnable task) {
+		if (task instanceof PageCache.PrefetchTask)
+			((PageCache<?>.PrefetchTask) task).discard();
+	}
+
+	private final class PrefetchTask implements Runnable {
+
+		private final PageKey key;
+
+		private final PageLoader<T> loader;
+
+		private final int generation;
+
+		private PrefetchTask(PageKey key, PageLoader<T> loader, int generation) {
+			this.key = key;
+			this.loader = loader;
+			this.generation = generation;
+		}
+
+		@Override
+		public void run() {
+			try {
+				List<T> page = loader.loadPage(key.pageIndex, pageSize);
+				if (PageCache.this.generation.get() == generation)
+					pages.put(key, page);
+			} catch (RuntimeException e) {
+				logger.warn("Couldn't prefetch page " + key.pageIndex + " for filter [" + key.filterKey + "]", e);
+			} finally {
+				pendingPrefetches.remove(key);
+			}
+		}
+
+		private void discard() {
+			pendingPrefetches.remove(key);
+		}
+	}
+
+	private static final class PageKey {
+
+		private final Object filterKey;
+
+		private final Object sortKey;
+
+		private final int pageIndex;
+
+		private PageKey(Object filterKey, Object sortKey, int pageIndex) {
+			this.filterKey = filterKey;
+			this.sortKey = sortKey;
+			this.pageIndex = pageIndex;
+		}
+
+		private boolean hasSameState(PageKey other) {
+			return Objects.equals(filterKey, other.filterKey) && Objects.equals(sortKey, other.sortKey);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o)
+				return true;
+			if (!(o instanceof PageKey))
+				return false;
+
+			PageKey that = (PageKey) o;
+			return pageIndex == that.pageIndex && hasSameState(that);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(filterKey, sortKey, pageIndex);
+		}
+	}
+}
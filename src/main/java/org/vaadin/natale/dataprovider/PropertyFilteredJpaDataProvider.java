@@ -1,11 +1,22 @@
 package org.vaadin.natale.dataprovider;
 
+import com.vaadin.data.provider.DataChangeEvent;
+import com.vaadin.data.provider.Query;
+import com.vaadin.data.provider.QuerySortOrder;
 import com.vaadin.server.SerializablePredicate;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.vaadin.natale.filter.PropertyFilter;
+import org.vaadin.natale.filter.PropertyFilterKey;
+import org.vaadin.natale.filter.PropertyFilterSpecification;
 import org.vaadin.natale.util.ObservableHashMap;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Objects;
+import java.util.stream.Stream;
 
 import static org.vaadin.natale.util.ReflectionUtil.getPropertyValueByName;
 
@@ -16,6 +27,16 @@ public class PropertyFilteredJpaDataProvider<T> extends JpaDataProvider<T> {
 	// Value - PropertyFilter itself.
 	private final ObservableHashMap<String, PropertyFilter> filterMap;
 
+	// Main filter object, that consists of property filters of filterMap.
+	private SerializablePredicate<T> propertyFiltersPredicate;
+
+	private boolean updatingFilter;
+
+	private int resultCacheSize;
+
+	// Created on demand, if result cache size is set.
+	private transient FilterResultCache<T> resultCache;
+
 	public PropertyFilteredJpaDataProvider(JpaRepository<T, ?> repository) {
 		super(repository);
 		filterMap = new ObservableHashMap<>();
@@ -25,22 +46,54 @@ public class PropertyFilteredJpaDataProvider<T> extends JpaDataProvider<T> {
 	}
 
 	/**
-	 * Sets a filter to be applied to all queries. The filter replaces any
-	 * filter that has been set or added previously.
+	 * Constructs a new PropertyFilteredJpaDataProvider with memory budget, that is checked before entities are loaded.
+	 *
+	 * @param repository   repository to obtain data from.
+	 * @param memoryBudget memory budget, or {@code null} to hold all entities in memory.
+	 * @see JpaDataProvider#JpaDataProvider(JpaRepository, MemoryBudget)
+	 */
+	public PropertyFilteredJpaDataProvider(JpaRepository<T, ?> repository, MemoryBudget memoryBudget) {
+		super(repository, memoryBudget);
+		filterMap = new ObservableHashMap<>();
+
+		filterMap.addPropertyChangeListener(event -> updateMainFilterObject());
+	}
+
+	/**
+	 * Constructs a new PropertyFilteredJpaDataProvider in paged mode.<br>
+	 * Property filters are evaluated in database, so repository has to be a {@link JpaSpecificationExecutor}.
+	 *
+	 * @param repository repository to obtain data from.
+	 * @param pageCache  cache for loaded pages.
+	 * @throws RuntimeException if repository isn't a {@link JpaSpecificationExecutor}.
+	 */
+	public PropertyFilteredJpaDataProvider(JpaRepository<T, ?> repository, PageCache<T> pageCache) {
+		super(repository, pageCache);
+		filterMap = new ObservableHashMap<>();
+
+		filterMap.addPropertyChangeListener(event -> updateMainFilterObject());
+	}
+
+	/**
+	 * Adds a property filter to be applied to all queries, if there is no filter of the same property yet.
+	 * All registered property filters are combined, the filter doesn't replace filters of other properties.
 	 *
-	 * @param filter the filter to set, or <code>null</code> to remove any set filters
+	 * @param filter the filter to add, or <code>null</code> to remove all property filters
 	 */
 	@SuppressWarnings("unchecked")
 	public void setPropertyFilter(PropertyFilter filter) {
 		if (filter == null) {
 			filterMap.clear();
 			super.setFilter(null);
+			propertyFiltersPredicate = null;
 		} else {
 			filterMap.putIfAbsent(filter.getPropertyName(), filter);
-			setFilter(entity -> filter.testProperty(getPropertyValueByName(filter.getPropertyName(), entity)));
 
 			// Register a property listener to handle any changes in filter object.
 			filter.addPropertyChangeListener(event -> updateMainFilterObject());
+
+			// Main filter object always consists of all property filters, the same as getSpecification().
+			updateMainFilterObject();
 		}
 	}
 
@@ -79,14 +132,178 @@ public class PropertyFilteredJpaDataProvider<T> extends JpaDataProvider<T> {
 	 * @return the previous PropertyFilter object associated with specified property name.
 	 */
 	public PropertyFilter removePropertyFilterByPropertyName(String propertyName) {
-		return filterMap.remove(propertyName);
+		PropertyFilter removed = filterMap.remove(propertyName);
+
+		// Filter map notifies listeners before the filter is removed.
+		updateMainFilterObject();
+		return removed;
+	}
+
+	/**
+	 * Cache results of property filters for the items in memory, so returning to a recent
+	 * filter and sort state doesn't filter all items again.<br>
+	 * Results are kept as positions of matched items, keyed by {@link PropertyFilterKey} and sort orders,
+	 * and updated on added, deleted and refreshed items. Least recently used results are evicted.
+	 * <p>
+	 * Filter changes don't reload items from backend, the provider is switched to lazy mode,
+	 * so use {@link #refreshAll()} or entity changes to get backend changes.
+	 * Results aren't cached in paged mode, where pages are cached by {@link PageCache}.
+	 *
+	 * @param maxResults maximum number of cached filter and sort states.
+	 * @return current PropertyFilteredJpaDataProvider
+	 */
+	public PropertyFilteredJpaDataProvider<T> withFilterResultCache(int maxResults) {
+		if (maxResults < 1)
+			throw new IllegalArgumentException("Result cache must allow at least one result, but maxResults = " + maxResults);
+
+		resultCacheSize = maxResults;
+		resultCache = new FilterResultCache<>(maxResults);
+		setLazy(true);
+		return this;
+	}
+
+	@Override
+	public Stream<T> fetch(Query<T, SerializablePredicate<T>> query) {
+		if (!isResultCacheUsable(query))
+			return super.fetch(query);
+
+		if (!isLazy)
+			getItemsFromBackend();
+
+		Comparator<T> comparator = Stream.of(query.getInMemorySorting(), getSortComparator())
+				.filter(Objects::nonNull)
+				.reduce((first, second) -> first.thenComparing(second))
+				.orElse(null);
+
+		FilterResultCache.Result result = comparator == null ?
+				resultCache.getResult(getFilterKey(), getItems())
+				: resultCache.getSortedResult(getFilterKey(), getItems(), getSortKey(query), comparator);
+		return trackLoadedItems(resultCache.stream(result, query.getOffset(), query.getLimit()));
+	}
+
+	@Override
+	public int size(Query<T, SerializablePredicate<T>> query) {
+		if (!isResultCacheUsable(query))
+			return super.size(query);
+
+		return resultCache.getResult(getFilterKey(), getItems()).size();
+	}
+
+	@Override
+	public void refreshAll() {
+		// Property filter changes are applied to the items in memory by cached results, without reloading them.
+		if (updatingFilter && resultCacheSize > 0 && !isPaged()) {
+			fireEvent(new DataChangeEvent<>(this));
+			return;
+		}
+		super.refreshAll();
+	}
+
+	@Override
+	protected void onItemAdded(T item) {
+		super.onItemAdded(item);
+		if (resultCache == null)
+			return;
+
+		// Added items are appended to the item list, otherwise their positions are unknown.
+		List<T> items = getItems() instanceof List ? (List<T>) getItems() : null;
+		if (items != null && !items.isEmpty() && items.get(items.size() - 1) == item)
+			resultCache.itemAppended(item);
+		else
+			resultCache.invalidate();
+	}
+
+	@Override
+	protected void onItemRemoved(T item) {
+		super.onItemRemoved(item);
+		if (resultCache != null)
+			resultCache.itemRemoved(item);
+	}
+
+	@Override
+	protected void onItemUpdated(T item) {
+		super.onItemUpdated(item);
+		if (resultCache != null)
+			resultCache.itemUpdated(item, item);
+	}
+
+	@Override
+	protected void onItemReplaced(T previous, T item) {
+		super.onItemReplaced(previous, item);
+		if (resultCache != null)
+			resultCache.itemUpdated(previous, item);
+	}
+
+	@Override
+	protected void onItemsReloaded() {
+		super.onItemsReloaded();
+		if (resultCache != null)
+			resultCache.invalidate();
+	}
+
+	@Override
+	protected Specification<T> getSpecification() {
+		PropertyFilterKey filterKey = getFilterKey();
+		return filterKey.isEmpty() ? null : new PropertyFilterSpecification<>(filterKey);
+	}
+
+	@Override
+	protected boolean isFilteredBySpecification() {
+		return true;
+	}
+
+	@Override
+	protected boolean isFilteredInBackend() {
+		// Filters set by setFilter() or addFilter() aren't a part of the specification.
+		return getFilter() == propertyFiltersPredicate;
+	}
+
+	@Override
+	protected PropertyFilterKey getFilterKey() {
+		return PropertyFilterKey.of(filterMap.values());
 	}
 
 	@SuppressWarnings("unchecked")
 	private void updateMainFilterObject() {
-		setFilter(null);
-		filterMap.forEach((propertyName, filter) ->
-				addFilter(entity -> filter.testProperty(getPropertyValueByName(filter.getPropertyName(), entity))));
+		updatingFilter = true;
+		try {
+			setFilter(null);
+			filterMap.forEach((propertyName, filter) ->
+					addFilter(entity -> filter.testProperty(getPropertyValueByName(filter.getPropertyName(), entity))));
+		} finally {
+			updatingFilter = false;
+		}
+		propertyFiltersPredicate = getFilter();
+	}
+
+	private boolean isResultCacheUsable(Query<T, SerializablePredicate<T>> query) {
+		if (resultCacheSize == 0 || isPaged() || query.getFilter().isPresent() || !(getItems() instanceof List))
+			return false;
+
+		// Results are keyed only by property filters, so other filters set by setFilter() aren't cached.
+		if (getFilter() != propertyFiltersPredicate)
+			return false;
+
+		// Cache isn't serialized with the provider.
+		if (resultCache == null)
+			resultCache = new FilterResultCache<>(resultCacheSize);
+		return true;
+	}
+
+	// Hashable sort state, or null if in-memory sorting isn't described by sort orders.
+	private Object getSortKey(Query<T, SerializablePredicate<T>> query) {
+		if (query.getInMemorySorting() != null && query.getSortOrders().isEmpty())
+			return null;
+
+		List<Object> sortKey = new ArrayList<>();
+		if (query.getInMemorySorting() != null) {
+			for (QuerySortOrder sortOrder : query.getSortOrders())
+				sortKey.add(sortOrder.getSorted() + " " + sortOrder.getDirection());
+		}
+
+		// Sort comparator of the provider is compared by identity.
+		sortKey.add(getSortComparator());
+		return sortKey;
 	}
 
 }
@@ -0,0 +1,467 @@
+package org.vaadin.natale.dataprovider;
+
+import com.vaadin.data.provider.DataChangeEvent;
+import com.vaadin.data.provider.Query;
+import com.vaadin.server.SerializableBiFunction;
+import com.vaadin.server.SerializableFunction;
+import com.vaadin.server.SerializablePredicate;
+import com.vaadin.server.SerializableSupplier;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.vaadin.natale.util.LruCache;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * JpaDataProvider, that keeps only the ordered list of entity ids between requests.<br>
+ * Entities of the visible range are loaded on demand by ids, and a small LRU cache of
+ * loaded entities is kept. {@code Long} and {@code Integer} ids are stored as {@code long[]}
+ * and serialized delta encoded, so session size doesn't grow with loaded entities.
+ * <p>
+ * The repository isn't serialized with the provider. It's obtained again by the repository locator
+ * after deserialization (for example, from the application context), and backend methods are bound to it.
+ * <p>
+ * <b>Note: </b>in-memory filters aren't applied, filter entities in the id loader query instead.
+ *
+ * @param <T>  entity type
+ * @param <ID> entity id type
+ */
+public class SessionLightJpaDataProvider<T, ID extends Serializable> extends JpaDataProvider<T> {
+
+	private static final int DEFAULT_ENTITY_CACHE_SIZE = 256;
+
+	private final SerializableSupplier<? extends JpaRepository<T, ID>> repositoryLocator;
+
+	private final SerializableBiFunction<JpaRepository<T, ID>, Sort, List<ID>> idLoader;
+
+	private final SerializableFunction<T, ID> entityIdGetter;
+
+	private transient JpaRepository<T, ID> entityRepository;
+
+	private int entityCacheSize = DEFAULT_ENTITY_CACHE_SIZE;
+
+	private transient LruCache<ID, T> entityCache = createEntityCache();
+
+	// Ids in current sort order, or null if they have to be loaded.
+	private transient IdList ids;
+
+	private transient Sort idsSort;
+
+	/**
+	 * Constructs a new SessionLightJpaDataProvider.
+	 *
+	 * @param repositoryLocator supplier of the repository to load entities by ids, called again after deserialization.
+	 * @param idLoader          function to load ordered ids of all entities by the repository for specified sort (or {@code null}).<br>
+	 *                          For example: {@code @Query("select e.id from Entity e") List<Long> findAllIds(Sort sort)}
+	 * @param idGetter          function to get entity id.
+	 * @param <R>               repository type.
+	 */
+	@SuppressWarnings("unchecked")
+	public <R extends JpaRepository<T, ID>> SessionLightJpaDataProvider(SerializableSupplier<R> repositoryLocator,
+	                                                                    SerializableBiFunction<R, Sort, List<ID>> idLoader,
+	                                                                    SerializableFunction<T, ID> idGetter) {
+		this(repositoryLocator.get(), repositoryLocator,
+				(SerializableBiFunction<JpaRepository<T, ID>, Sort, List<ID>>) (SerializableBiFunction<?, ?, ?>) idLoader, idGetter);
+	}
+
+	private SessionLightJpaDataProvider(JpaRepository<T, ID> repository,
+	                                    SerializableSupplier<? extends JpaRepository<T, ID>> repositoryLocator,
+	                                    SerializableBiFunction<JpaRepository<T, ID>, Sort, List<ID>> idLoader,
+	                                    SerializableFunction<T, ID> idGetter) {
+		super(repository, (PageCache<T>) null);
+		this.repositoryLocator = repositoryLocator;
+		this.idLoader = idLoader;
+		this.entityIdGetter = idGetter;
+		this.entityRepository = repository;
+		this.idGetter = idGetter;
+	}
+
+	/**
+	 * Set maximum number of loaded entities, kept between requests.
+	 *
+	 * @param entityCacheSize maximum number of cached entities.
+	 * @return current SessionLightJpaDataProvider
+	 */
+	public SessionLightJpaDataProvider<T, ID> withEntityCacheSize(int entityCacheSize) {
+		this.entityCacheSize = entityCacheSize;
+		this.entityCache = createEntityCache();
+		return this;
+	}
+
+	@Override
+	public boolean isInMemory() {
+		return false;
+	}
+
+	@Override
+	public Stream<T> fetch(Query<T, SerializablePredicate<T>> query) {
+		IdList currentIds = getIds(toSort(query.getSortOrders()));
+
+		int end = (int) Math.min((long) query.getOffset() + query.getLimit(), currentIds.size());
+		if (query.getOffset() >= end)
+			return Stream.empty();
+
+		List<ID> windowIds = new ArrayList<>(end - query.getOffset());
+		for (int i = query.getOffset(); i < end; ++i)
+			windowIds.add(currentIds.get(i));
+
+		return trackLoadedItems(loadEntities(windowIds).stream());
+	}
+
+	@Override
+	public int size(Query<T, SerializablePredicate<T>> query) {
+		// Count doesn't depend on sort, and DataCommunicator queries size without sort orders.
+		return ids != null ? ids.size() : getIds(idsSort).size();
+	}
+
+	@Override
+	public void refreshAll() {
+		ids = null;
+		entityCache.clear();
+		onItemsReloaded();
+		fireEvent(new DataChangeEvent<>(this));
+	}
+
+	@Override
+	public void refreshItem(T item) {
+		super.refreshItem(item);
+		entityCache.put(getEntityId(item), item);
+	}
+
+	@Override
+	public void addItem(T item) {
+		writeToBackend(addElementMethod, item);
+		appendId(item);
+		fireEvent(new DataChangeEvent<>(this));
+	}
+
+	@Override
+	public void deleteItem(T item) {
+		writeToBackend(deleteElementMethod, item);
+		ID id = getEntityId(item);
+		entityCache.remove(id);
+		onItemRemoved(item);
+		removeId(id);
+		fireEvent(new DataChangeEvent<>(this));
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	protected void applyEntityChange(EntityChangeEvent<T> event) {
+		ID id = (ID) event.getEntityId();
+
+		switch (event.getChangeType()) {
+			case ADDED:
+				// Entity is loaded on demand, like the other entities.
+				if (ids != null && ids.indexOf(id) < 0) {
+					ids.add(id);
+					fireEvent(new DataChangeEvent<>(this));
+				}
+				break;
+			case UPDATED:
+				T previous = entityCache.remove(id);
+				if (previous != null) {
+					if (dirtyTracker != null)
+						dirtyTracker.forget(previous);
+					fireEvent(new DataChangeEvent<>(this));
+				}
+				break;
+			case REMOVED:
+				T removed = entityCache.remove(id);
+				if (removed != null)
+					onItemRemoved(removed);
+				if (removeId(id))
+					fireEvent(new DataChangeEvent<>(this));
+				break;
+		}
+	}
+
+	@Override
+	protected void getItemsFromBackend() {
+		// Entities are loaded on demand by ids.
+	}
+
+	// Snapshots of dirty tracking are kept only for cached entities.
+	private LruCache<ID, T> createEntityCache() {
+		return new LruCache<ID, T>(entityCacheSize).withEvictionListener((id, entity) -> {
+			if (dirtyTracker != null)
+				dirtyTracker.forget(entity);
+		});
+	}
+
+	private IdList getIds(Sort sort) {
+		if (ids == null || !Objects.equals(sort, idsSort)) {
+			ids = IdList.of(idLoader.apply(entityRepository, sort));
+			idsSort = sort;
+		}
+		return ids;
+	}
+
+	private List<T> loadEntities(List<ID> windowIds) {
+		Map<ID, T> entities = new HashMap<>();
+		List<ID> missingIds = new ArrayList<>();
+		for (ID id : windowIds) {
+			T entity = entityCache.get(id);
+			if (entity == null)
+				missingIds.add(id);
+			else
+				entities.put(id, entity);
+		}
+
+		if (!missingIds.isEmpty()) {
+			for (T entity : entityRepository.findAll(missingIds)) {
+				ID id = getEntityId(entity);
+				entities.put(id, entity);
+				entityCache.put(id, entity);
+			}
+		}
+
+		// Entities are returned in id order, ids of entities deleted meanwhile are skipped.
+		List<T> window = new ArrayList<>(windowIds.size());
+		for (ID id : windowIds) {
+			T entity = entities.get(id);
+			if (entity != null)
+				window.add(entity);
+		}
+		return window;
+	}
+
+	private void appendId(T entity) {
+		ID id = getEntityId(entity);
+		if (ids != null && ids.indexOf(id) < 0)
+			ids.add(id);
+		entityCache.put(id, entity);
+	}
+
+	private boolean removeId(ID id) {
+		if (ids == null)
+			return false;
+
+		int index = ids.indexOf(id);
+		if (index < 0)
+			return false;
+
+		ids.remove(index);
+		return true;
+	}
+
+	private ID getEntityId(T entity) {
+		return entityIdGetter.apply(entity);
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeObject(idsSort);
+		IdList.write(ids, out);
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		idsSort = (Sort) in.readObject();
+		ids = IdList.read(in);
+		entityCache = createEntityCache();
+		bindRepository(repositoryLocator.get());
+		idGetter = entityIdGetter;
+	}
+
+	private void bindRepository(JpaRepository<T, ID> repository) {
+		entityRepository = repository;
+		this.repository = repository;
+		getAllElementsMethod = repository::findAll;
+		updateElementMethod = repository::save;
+		deleteElementMethod = repository::delete;
+		addElementMethod = repository::save;
+	}
+
+	/**
+	 * Ordered list of ids, stored as {@code long[]} for {@code Long} and {@code Integer} ids.
+	 */
+	private static final class IdList {
+
+		private static final int INITIAL_CAPACITY = 16;
+
+		// Id type of long values: Long.class or Integer.class, or null if ids were always stored as objects.
+		private final Class<?> longIdType;
+
+		private long[] longIds;
+
+		private Object[] objectIds;
+
+		private int size;
+
+		private IdList(Class<?> longIdType, int capacity) {
+			this.longIdType = longIdType;
+			if (longIdType != null)
+				longIds = new long[Math.max(capacity, INITIAL_CAPACITY)];
+			else
+				objectIds = new Object[Math.max(capacity, INITIAL_CAPACITY)];
+		}
+
+		private static IdList of(List<?> ids) {
+			IdList idList = new IdList(getLongIdType(ids), ids.size());
+			for (Object id : ids)
+				idList.add(id);
+			return idList;
+		}
+
+		private static Class<?> getLongIdType(List<?> ids) {
+			if (ids.isEmpty())
+				return null;
+
+			Class<?> idType = ids.get(0).getClass();
+			if (idType != Long.class && idType != Integer.class)
+				return null;
+
+			for (Object id : ids) {
+				if (id.getClass() != idType)
+					return null;
+			}
+			return idType;
+		}
+
+		private int size() {
+			return size;
+		}
+
+		@SuppressWarnings("unchecked")
+		private <ID> ID get(int index) {
+			if (longIds == null)
+				return (ID) objectIds[index];
+
+			return (ID) (longIdType == Integer.class ? (Object) (int) longIds[index] : (Object) longIds[index]);
+		}
+
+		private int indexOf(Object id) {
+			if (longIds != null) {
+				if (id == null || id.getClass() != longIdType)
+					return -1;
+
+				long value = ((Number) id).longValue();
+				for (int i = 0; i < size; ++i) {
+					if (longIds[i] == value)
+						return i;
+				}
+				return -1;
+			}
+
+			for (int i = 0; i < size; ++i) {
+				if (Objects.equals(objectIds[i], id))
+					return i;
+			}
+			return -1;
+		}
+
+		private void add(Object id) {
+			if (longIds != null && (id == null || id.getClass() != longIdType))
+				convertToObjectIds();
+
+			if (longIds != null) {
+				if (size == longIds.length)
+					longIds = Arrays.copyOf(longIds, size * 2);
+				longIds[size++] = ((Number) id).longValue();
+			} else {
+				if (size == objectIds.length)
+					objectIds = Arrays.copyOf(objectIds, size * 2);
+				objectIds[size++] = id;
+			}
+		}
+
+		private void remove(int index) {
+			if (longIds != null)
+				System.arraycopy(longIds, index + 1, longIds, index, size - index - 1);
+			else {
+				System.arraycopy(objectIds, index + 1, objectIds, index, size - index - 1);
+				objectIds[size - 1] = null;
+			}
+			--size;
+		}
+
+		// Called when an id of other type is added to long ids.
+		private void convertToObjectIds() {
+			objectIds = new Object[Math.max(longIds.length, INITIAL_CAPACITY)];
+			for (int i = 0; i < size; ++i)
+				objectIds[i] = get(i);
+			longIds = null;
+		}
+
+		/**
+		 * Writes ids: {@code long} ids as zigzag varint deltas, other ids as objects.
+		 */
+		private static void write(IdList ids, ObjectOutputStream out) throws IOException {
+			if (ids == null) {
+				out.writeByte(0);
+				return;
+			}
+
+			if (ids.longIds == null) {
+				out.writeByte(1);
+				out.writeInt(ids.size);
+				for (int i = 0; i < ids.size; ++i)
+					out.writeObject(ids.objectIds[i]);
+				return;
+			}
+
+			out.writeByte(ids.longIdType == Integer.class ? 2 : 3);
+			out.writeInt(ids.size);
+			long previous = 0;
+			for (int i = 0; i < ids.size; ++i) {
+				long delta = ids.longIds[i] - previous;
+				writeVarLong((delta << 1) ^ (delta >> 63), out);
+				previous = ids.longIds[i];
+			}
+		}
+
+		private static IdList read(ObjectInputStream in) throws IOException, ClassNotFoundException {
+			byte type = in.readByte();
+			if (type == 0)
+				return null;
+
+			int size = in.readInt();
+			if (type == 1) {
+				IdList ids = new IdList(null, size);
+				for (int i = 0; i < size; ++i)
+					ids.add(in.readObject());
+				return ids;
+			}
+
+			IdList ids = new IdList(type == 2 ? Integer.class : Long.class, size);
+			long previous = 0;
+			for (int i = 0; i < size; ++i) {
+				long zigzag = readVarLong(in);
+				previous += (zigzag >>> 1) ^ -(zigzag & 1);
+				ids.longIds[i] = previous;
+			}
+			ids.size = size;
+			return ids;
+		}
+
+		private static void writeVarLong(long value, ObjectOutputStream out) throws IOException {
+			while ((value & ~0x7FL) != 0) {
+				out.writeByte((int) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			out.writeByte((int) value);
+		}
+
+		private static long readVarLong(ObjectInputStream in) throws IOException {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				byte b = in.readByte();
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0)
+					return value;
+			}
+			throw new IOException("Malformed variable length id");
+		}
+	}
+}
@@ -0,0 +1,311 @@
+package org.vaadin.natale.dataprovider;
+
+import org.apache.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Ordered list of items, serialized into a memory-mapped temporary file instead of heap.<br>
+ * Items are written in blocks of {@link #BLOCK_SIZE} by a single {@link ObjectOutputStream},
+ * so class descriptors and shared objects are written once per block. Items are read back
+ * on demand, and only the last read block is kept deserialized.
+ * <p>
+ * Removed and replaced items are only unlinked, their bytes stay in the file until it is closed.
+ * <p>
+ * File of a store, that isn't closed, is deleted after the store is garbage collected
+ * (checked whenever a new store is created), or on JVM shutdown.
+ *
+ * @param <T> data type, items have to be {@link java.io.Serializable}
+ */
+final class SpillStore<T> implements Closeable {
+
+	private static final Logger logger = Logger.getLogger(SpillStore.class);
+
+	static final int BLOCK_SIZE = 128;
+
+	private static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	// Maximum number of read items, that are remembered to find them by identity.
+	private static final int MAX_MATERIALIZED_ITEMS = 4096;
+
+	// Stores, that have been garbage collected without closing.
+	private static final ReferenceQueue<SpillStore<?>> collectedStores = new ReferenceQueue<>();
+
+	// Files, that haven't been deleted yet. References are kept here, until they are released.
+	private static final Set<SpillFileReference> undeletedFiles = ConcurrentHashMap.newKeySet();
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> undeletedFiles.forEach(SpillFileReference::release),
+				"natale-spill-cleanup"));
+	}
+
+	private final File file;
+
+	private final RandomAccessFile randomAccessFile;
+
+	private final SpillFileReference fileReference;
+
+	private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+	private int segmentOffset;
+
+	// Position of each block: segment index in upper 32 bits, offset in segment in lower 32 bits.
+	private long[] blockPositions = new long[INITIAL_CAPACITY];
+
+	private int[] blockLengths = new int[INITIAL_CAPACITY];
+
+	private int blockCount;
+
+	// Item location: block index in upper 32 bits, index in block in lower 32 bits.
+	private long[] rows = new long[INITIAL_CAPACITY];
+
+	private int size;
+
+	private int cachedBlockIndex = -1;
+
+	private List<T> cachedBlock;
+
+	// Read items by identity with their row index, invalidated when rows are shifted.
+	private final Map<T, Integer> materializedRows = new IdentityHashMap<>();
+
+	SpillStore() throws IOException {
+		releaseCollectedStores();
+
+		file = File.createTempFile("natale-spill-", ".bin");
+		try {
+			randomAccessFile = new RandomAccessFile(file, "rw");
+		} catch (IOException e) {
+			file.delete();
+			throw e;
+		}
+		fileReference = new SpillFileReference(this);
+		undeletedFiles.add(fileReference);
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Append items to the end of the store.
+	 *
+	 * @param items items to append.
+	 * @throws IOException if some item can't be serialized or written.
+	 */
+	void addAll(Collection<? extends T> items) throws IOException {
+		List<T> block = new ArrayList<>(BLOCK_SIZE);
+		for (T item : items) {
+			block.add(item);
+			if (block.size() == BLOCK_SIZE) {
+				addRows(appendBlock(block), block.size());
+				block.clear();
+			}
+		}
+
+		if (!block.isEmpty())
+			addRows(appendBlock(block), block.size());
+	}
+
+	T get(int index) {
+		long row = rows[index];
+		T item = readBlock((int) (row >>> 32)).get((int) row);
+		if (materializedRows.size() >= MAX_MATERIALIZED_ITEMS)
+			materializedRows.clear();
+		materializedRows.put(item, index);
+		return item;
+	}
+
+	/**
+	 * Replace item at specified index.
+	 *
+	 * @param index index of item.
+	 * @param item  new item.
+	 */
+	void set(int index, T item) {
+		try {
+			rows[index] = (long) appendBlock(Arrays.asList(item)) << 32;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		materializedRows.put(item, index);
+	}
+
+	void remove(int index) {
+		System.arraycopy(rows, index + 1, rows, index, size - index - 1);
+		--size;
+		materializedRows.clear();
+	}
+
+	/**
+	 * Find index of the item: by identity, if it was read recently, or by equality.
+	 *
+	 * @param item item to find.
+	 * @return index of the item, or {@code -1} if there is no such item.
+	 */
+	int indexOf(T item) {
+		Integer index = materializedRows.get(item);
+		if (index != null)
+			return index;
+
+		return indexOf(item::equals);
+	}
+
+	int indexOf(Predicate<? super T> predicate) {
+		for (int i = 0; i < size; ++i) {
+			if (predicate.test(get(i)))
+				return i;
+		}
+		return -1;
+	}
+
+	Stream<T> stream() {
+		return IntStream.range(0, size).mapToObj(this::get);
+	}
+
+	@Override
+	public void close() {
+		segments.clear();
+		cachedBlock = null;
+		materializedRows.clear();
+
+		// Otherwise the file is deleted after current store is garbage collected.
+		fileReference.release();
+	}
+
+	private int appendBlock(List<T> block) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeInt(block.size());
+			for (T item : block)
+				out.writeObject(item);
+		}
+
+		int blockIndex = blockCount;
+		blockPositions = ensureCapacity(blockPositions, blockCount);
+		blockLengths = ensureCapacity(blockLengths, blockCount);
+		blockPositions[blockIndex] = write(bytes.toByteArray());
+		blockLengths[blockIndex] = bytes.size();
+		++blockCount;
+		return blockIndex;
+	}
+
+	private void addRows(int blockIndex, int count) {
+		for (int i = 0; i < count; ++i) {
+			rows = ensureCapacity(rows, size);
+			rows[size++] = (long) blockIndex << 32 | i;
+		}
+	}
+
+	private long write(byte[] bytes) throws IOException {
+		MappedByteBuffer segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+		if (segment == null || segmentOffset + bytes.length > segment.capacity()) {
+			long fileSize = randomAccessFile.length();
+			segment = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, fileSize, Math.max(SEGMENT_SIZE, bytes.length));
+			segments.add(segment);
+			segmentOffset = 0;
+		}
+
+		ByteBuffer target = segment.duplicate();
+		target.position(segmentOffset);
+		target.put(bytes);
+
+		long position = (long) (segments.size() - 1) << 32 | segmentOffset;
+		segmentOffset += bytes.length;
+		return position;
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<T> readBlock(int blockIndex) {
+		if (blockIndex == cachedBlockIndex)
+			return cachedBlock;
+
+		long position = blockPositions[blockIndex];
+		ByteBuffer source = segments.get((int) (position >>> 32)).duplicate();
+		source.position((int) position);
+		byte[] bytes = new byte[blockLengths[blockIndex]];
+		source.get(bytes);
+
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+			int count = in.readInt();
+			List<T> block = new ArrayList<>(count);
+			for (int i = 0; i < count; ++i)
+				block.add((T) in.readObject());
+
+			cachedBlockIndex = blockIndex;
+			cachedBlock = block;
+			return block;
+		} catch (IOException | ClassNotFoundException e) {
+			String errorMessage = "Couldn't read spilled items from [" + file + "]";
+			logger.error(errorMessage, e);
+			throw new RuntimeException(errorMessage, e);
+		}
+	}
+
+	private static void releaseCollectedStores() {
+		Reference<? extends SpillStore<?>> reference;
+		while ((reference = collectedStores.poll()) != null)
+			((SpillFileReference) reference).release();
+	}
+
+	private static long[] ensureCapacity(long[] array, int size) {
+		return size < array.length ? array : Arrays.copyOf(array, array.length * 2);
+	}
+
+	private static int[] ensureCapacity(int[] array, int size) {
+		return size < array.length ? array : Arrays.copyOf(array, array.length * 2);
+	}
+
+	private static final class SpillFileReference extends PhantomReference<SpillStore<?>> {
+
+		private final File file;
+
+		private final RandomAccessFile randomAccessFile;
+
+		private SpillFileReference(SpillStore<?> store) {
+			super(store, collectedStores);
+			this.file = store.file;
+			this.randomAccessFile = store.randomAccessFile;
+		}
+
+		private void release() {
+			try {
+				randomAccessFile.close();
+			} catch (IOException e) {
+				logger.error("Couldn't close spill file [" + file + "]", e);
+			}
+
+			// Mapped segments are released by garbage collector, so the file can't be deleted on some platforms until then.
+			if (file.delete() || !file.exists())
+				undeletedFiles.remove(this);
+			else
+				logger.debug("Spill file [" + file + "] is deleted after garbage collection");
+		}
+	}
+}
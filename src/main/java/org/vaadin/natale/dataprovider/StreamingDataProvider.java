@@ -0,0 +1,24 @@
+package org.vaadin.natale.dataprovider;
+
+import com.vaadin.data.provider.Query;
+
+import java.util.function.Consumer;
+
+/**
+ * Data provider, that reads all items of its current filter in a single pass (like an export does),
+ * without paging them by offset and without caching them.
+ *
+ * @param <T> data type
+ * @param <F> filter type
+ */
+public interface StreamingDataProvider<T, F> {
+
+	/**
+	 * Pass all items, that pass the current filter, to the action in the query sort order.<br>
+	 * Offset and limit of the query are ignored, its filter is applied only by in-memory providers.
+	 *
+	 * @param query  query with sort orders.
+	 * @param action action for each item.
+	 */
+	void forEachItem(Query<T, F> query, Consumer<? super T> action);
+}
@@ -0,0 +1,186 @@
+package org.vaadin.natale.filter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BiFunction;
+
+import static org.vaadin.natale.util.ReflectionUtil.getPropertyValueByName;
+
+/**
+ * Immutable, hashable snapshot of a set of {@link PropertyFilter}s.<br>
+ * Two keys are equal if the filters they were built from select the same items,
+ * so a key can be used to cache results per filter state.<br>
+ * <b>Note: </b>filters without a filter value don't filter anything and are skipped.
+ */
+public final class PropertyFilterKey {
+
+	private static final PropertyFilterKey EMPTY = new PropertyFilterKey(Collections.emptyList());
+
+	private final List<Entry> entries;
+
+	private final int hashCode;
+
+	private PropertyFilterKey(List<Entry> entries) {
+		this.entries = entries;
+		this.hashCode = entries.hashCode();
+	}
+
+	/**
+	 * Creates a key for the current state of specified filters.
+	 *
+	 * @param filters active property filters.
+	 * @return canonical key of the filters state.
+	 */
+	@SuppressWarnings("unchecked")
+	public static PropertyFilterKey of(Collection<? extends PropertyFilter> filters) {
+		List<Entry> entries = new ArrayList<>(filters.size());
+		for (PropertyFilter filter : filters) {
+			if (filter.getFilterValue() != null)
+				entries.add(new Entry(filter));
+		}
+
+		if (entries.isEmpty())
+			return EMPTY;
+
+		entries.sort(Comparator.comparing(Entry::getPropertyName));
+		return new PropertyFilterKey(Collections.unmodifiableList(entries));
+	}
+
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	public boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	/**
+	 * Test an item against the filters state of this key, the same way as the original filters would.
+	 *
+	 * @param item item to test.
+	 * @return {@code true} if the item passes all filters.
+	 */
+	public boolean test(Object item) {
+		for (Entry entry : entries) {
+			if (!entry.getFilter().testProperty(getPropertyValueByName(entry.getPropertyName(), item)))
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o)
+			return true;
+		if (!(o instanceof PropertyFilterKey))
+			return false;
+
+		PropertyFilterKey that = (PropertyFilterKey) o;
+		return hashCode == that.hashCode && entries.equals(that.entries);
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+
+	@Override
+	public String toString() {
+		return "PropertyFilterKey" + entries;
+	}
+
+	/**
+	 * Snapshot of a single {@link PropertyFilter}.
+	 */
+	public static final class Entry {
+
+		private final String propertyName;
+
+		private final FilterMode mode;
+
+		private final Object filterValue;
+
+		private final boolean ignoreCase;
+
+		private final BiFunction<?, ?, Integer> compareToMethod;
+
+		// Detached copy of the filter in this state, created on first test.
+		private PropertyFilter<?> filter;
+
+		private Entry(PropertyFilter<?> filter) {
+			this.propertyName = filter.getPropertyName();
+			this.mode = filter.getMode();
+			this.compareToMethod = filter.getCompareToMethod();
+
+			// Ordering modes compare values by compareToMethod, case is ignored only by text matching modes.
+			this.ignoreCase = filter.isIgnoreCase() && isTextMatching(mode);
+
+			// Case doesn't matter for ignoreCase string filters, so "Abc" and "abc" select the same items.
+			Object value = filter.getFilterValue();
+			this.filterValue = ignoreCase && value instanceof String ? ((String) value).toLowerCase() : value;
+		}
+
+		public String getPropertyName() {
+			return propertyName;
+		}
+
+		public FilterMode getMode() {
+			return mode;
+		}
+
+		public Object getFilterValue() {
+			return filterValue;
+		}
+
+		public boolean isIgnoreCase() {
+			return ignoreCase;
+		}
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		private PropertyFilter<?> getFilter() {
+			if (filter == null) {
+				filter = PropertyFilter.build(propertyName, (BiFunction) compareToMethod)
+						.setFilterValue(filterValue)
+						.setFilterMode(mode)
+						.setIgnoreCase(ignoreCase);
+			}
+			return filter;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o)
+				return true;
+			if (!(o instanceof Entry))
+				return false;
+
+			Entry that = (Entry) o;
+			return ignoreCase == that.ignoreCase
+					&& propertyName.equals(that.propertyName)
+					&& mode == that.mode
+					&& filterValue.equals(that.filterValue)
+					&& compareToMethod == that.compareToMethod;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(propertyName, mode, filterValue, ignoreCase);
+		}
+
+		@Override
+		public String toString() {
+			return propertyName + " " + mode + " " + filterValue + (ignoreCase ? " (ignoreCase)" : "");
+		}
+
+		private static boolean isTextMatching(FilterMode mode) {
+			return mode == FilterMode.CONTAINS
+					|| mode == FilterMode.NOT_CONTAINS
+					|| mode == FilterMode.EQUALS
+					|| mode == FilterMode.NOT_EQUALS;
+		}
+	}
+}
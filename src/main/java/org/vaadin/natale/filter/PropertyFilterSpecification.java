@@ -0,0 +1,126 @@
+package org.vaadin.natale.filter;
+
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JPA {@link Specification} with the same semantics as {@link PropertyFilter#testProperty(Object)}.<br>
+ * Allows to evaluate property filters in the database instead of in memory.<br>
+ * <b>Note: </b>{@code compareToMethod} isn't translated, ordering modes use the database ordering.
+ *
+ * @param <T> entity type
+ */
+public class PropertyFilterSpecification<T> implements Specification<T> {
+
+	private static final char LIKE_ESCAPE_CHAR = '\\';
+
+	private final PropertyFilterKey filterKey;
+
+	/**
+	 * Creates a new PropertyFilterSpecification.
+	 *
+	 * @param filterKey snapshot of filters to translate.
+	 */
+	public PropertyFilterSpecification(PropertyFilterKey filterKey) {
+		this.filterKey = filterKey;
+	}
+
+	@Override
+	public Predicate toPredicate(Root<T> root, CriteriaQuery<?> query, CriteriaBuilder cb) {
+		List<Predicate> predicates = new ArrayList<>();
+		for (PropertyFilterKey.Entry entry : filterKey.getEntries())
+			predicates.add(toPredicate(entry, getPath(root, entry.getPropertyName()), cb));
+
+		return cb.and(predicates.toArray(new Predicate[predicates.size()]));
+	}
+
+	public PropertyFilterKey getFilterKey() {
+		return filterKey;
+	}
+
+	/**
+	 * Resolves a (nested) property name, like 'artist.id', to a criteria path.
+	 *
+	 * @param root         query root.
+	 * @param propertyName property name.
+	 * @return path of the property.
+	 */
+	public static Path<?> getPath(Root<?> root, String propertyName) {
+		Path<?> path = root;
+		for (String name : propertyName.split("\\."))
+			path = path.get(name);
+		return path;
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static Predicate toPredicate(PropertyFilterKey.Entry entry, Path<?> path, CriteriaBuilder cb) {
+		Object value = entry.getFilterValue();
+		Expression<Comparable> comparablePath = (Expression<Comparable>) path;
+
+		Predicate predicate;
+		switch (entry.getMode()) {
+			case CONTAINS:
+				predicate = cb.like(toStringExpression(path, entry, cb), toLikePattern(value, LIKE_ESCAPE_CHAR), LIKE_ESCAPE_CHAR);
+				break;
+			case NOT_CONTAINS:
+				predicate = cb.notLike(toStringExpression(path, entry, cb), toLikePattern(value, LIKE_ESCAPE_CHAR), LIKE_ESCAPE_CHAR);
+				break;
+			case EQUALS:
+				predicate = value instanceof String ?
+						cb.equal(toStringExpression(path, entry, cb), value)
+						: cb.equal(path, value);
+				break;
+			case NOT_EQUALS:
+				predicate = value instanceof String ?
+						cb.notEqual(toStringExpression(path, entry, cb), value)
+						: cb.notEqual(path, value);
+				break;
+			case GREATER:
+				predicate = cb.greaterThan(comparablePath, (Comparable) value);
+				break;
+			case SMALLER:
+				predicate = cb.lessThan(comparablePath, (Comparable) value);
+				break;
+			case GREATER_OR_EQUAL:
+				predicate = cb.greaterThanOrEqualTo(comparablePath, (Comparable) value);
+				break;
+			case SMALLER_OR_EQUAL:
+				predicate = cb.lessThanOrEqualTo(comparablePath, (Comparable) value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unsupported FilterMode - " + entry.getMode());
+		}
+
+		// PropertyFilter.testProperty() passes all null property values.
+		return cb.or(cb.isNull(path), predicate);
+	}
+
+	private static Expression<String> toStringExpression(Path<?> path, PropertyFilterKey.Entry entry, CriteriaBuilder cb) {
+		Expression<String> expression = path.as(String.class);
+		// Filter value of ignoreCase entry is already lower case.
+		return entry.isIgnoreCase() ? cb.lower(expression) : expression;
+	}
+
+	/**
+	 * Creates a 'contains' LIKE pattern for the filter value, escaping its wildcards.
+	 *
+	 * @param value      filter value.
+	 * @param escapeChar escape character of the LIKE expression.
+	 * @return LIKE pattern.
+	 */
+	public static String toLikePattern(Object value, char escapeChar) {
+		String escaped = value.toString()
+				.replace(String.valueOf(escapeChar), "" + escapeChar + escapeChar)
+				.replace("%", escapeChar + "%")
+				.replace("_", escapeChar + "_");
+		return "%" + escaped + "%";
+	}
+}
@@ -0,0 +1,209 @@
+package org.vaadin.natale.util;
+
+import org.apache.log4j.Logger;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Maps JDBC result set rows to beans.<br>
+ * Columns are matched to bean properties ignoring case and underscores
+ * (column 'FIRST_NAME' is mapped to property 'firstName'). Setters are resolved once
+ * per result set layout and invoked through generated functions instead of reflection.
+ *
+ * @param <T> bean type
+ */
+public class BeanRowMapper<T> {
+
+	private static final Logger logger = Logger.getLogger(BeanRowMapper.class);
+
+	private final Class<T> beanType;
+
+	private final Map<String, PropertyDescriptor> writablePropertiesByName = new HashMap<>();
+
+	// Setters by column index, for the last result set layout.
+	private String mappedColumns;
+
+	private ColumnSetter[] columnSetters;
+
+	public BeanRowMapper(Class<T> beanType) {
+		this.beanType = beanType;
+
+		try {
+			for (PropertyDescriptor descriptor : Introspector.getBeanInfo(beanType, Object.class).getPropertyDescriptors()) {
+				if (descriptor.getWriteMethod() != null)
+					writablePropertiesByName.put(normalizeName(descriptor.getName()), descriptor);
+			}
+		} catch (IntrospectionException e) {
+			logger.error("Couldn't introspect class [" + beanType.getSimpleName() + "], no columns would be mapped", e);
+		}
+	}
+
+	/**
+	 * Map current row of the result set to a new bean.
+	 *
+	 * @param resultSet result set, positioned on a row.
+	 * @return new bean with values of mapped columns.
+	 * @throws SQLException if reading the result set fails.
+	 */
+	public T mapRow(ResultSet resultSet) throws SQLException {
+		ColumnSetter[] setters = getColumnSetters(resultSet.getMetaData());
+
+		T bean = newBean();
+		for (int i = 0; i < setters.length; ++i) {
+			if (setters[i] == null)
+				continue;
+
+			Object value = resultSet.getObject(i + 1);
+			if (value != null)
+				setters[i].setter.accept(bean, convert(value, setters[i].type, resultSet, i + 1));
+		}
+		return bean;
+	}
+
+	/**
+	 * Get column name for property name: 'firstName' is converted to 'first_name'.
+	 *
+	 * @param propertyName bean property name.
+	 * @return column name.
+	 */
+	public static String toColumnName(String propertyName) {
+		return propertyName.replaceAll("([a-z0-9])([A-Z])", "$1_$2").toLowerCase();
+	}
+
+	private ColumnSetter[] getColumnSetters(ResultSetMetaData metaData) throws SQLException {
+		StringBuilder columns = new StringBuilder();
+		for (int i = 1; i <= metaData.getColumnCount(); ++i)
+			columns.append(metaData.getColumnLabel(i)).append(',');
+
+		if (columns.toString().equals(mappedColumns))
+			return columnSetters;
+
+		ColumnSetter[] setters = new ColumnSetter[metaData.getColumnCount()];
+		for (int i = 0; i < setters.length; ++i) {
+			PropertyDescriptor descriptor = writablePropertiesByName.get(normalizeName(metaData.getColumnLabel(i + 1)));
+			if (descriptor != null)
+				setters[i] = new ColumnSetter(compileSetter(descriptor.getWriteMethod()), wrap(descriptor.getPropertyType()));
+		}
+
+		mappedColumns = columns.toString();
+		columnSetters = setters;
+		return setters;
+	}
+
+	private T newBean() {
+		try {
+			return beanType.newInstance();
+		} catch (InstantiationException | IllegalAccessException e) {
+			String errorMessage = "Couldn't create a new instance of [" + beanType.getSimpleName() + "], it has to have a public no-arg constructor";
+			logger.error(errorMessage);
+			throw new RuntimeException(errorMessage, e);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static BiConsumer<Object, Object> compileSetter(Method setter) {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			MethodHandle handle = lookup.unreflect(setter);
+			CallSite callSite = LambdaMetafactory.metafactory(lookup,
+					"accept",
+					MethodType.methodType(BiConsumer.class),
+					MethodType.methodType(void.class, Object.class, Object.class),
+					handle,
+					MethodType.methodType(void.class, setter.getDeclaringClass(), wrap(setter.getParameterTypes()[0])));
+			return (BiConsumer<Object, Object>) callSite.getTarget().invoke();
+		} catch (Throwable e) {
+			// Not accessible for lambda generation (non public class, other class loader), so fall back to reflection.
+			setter.setAccessible(true);
+			return (bean, value) -> {
+				try {
+					setter.invoke(bean, value);
+				} catch (IllegalAccessException | InvocationTargetException ex) {
+					logger.error("Couldn't invoke method [" + setter.getName() + " - " + setter + "] for object: " + bean);
+				}
+			};
+		}
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static Object convert(Object value, Class<?> type, ResultSet resultSet, int columnIndex) throws SQLException {
+		if (type.isInstance(value))
+			return value;
+
+		if (value instanceof Number) {
+			Number number = (Number) value;
+			if (type == Long.class)
+				return number.longValue();
+			if (type == Integer.class)
+				return number.intValue();
+			if (type == Double.class)
+				return number.doubleValue();
+			if (type == Float.class)
+				return number.floatValue();
+			if (type == Short.class)
+				return number.shortValue();
+			if (type == Byte.class)
+				return number.byteValue();
+			if (type == BigDecimal.class)
+				return new BigDecimal(number.toString());
+			if (type == BigInteger.class)
+				return new BigDecimal(number.toString()).toBigInteger();
+			if (type == Boolean.class)
+				return number.intValue() != 0;
+		}
+
+		if (value instanceof Timestamp && type == java.time.LocalDateTime.class)
+			return ((Timestamp) value).toLocalDateTime();
+		if (value instanceof java.sql.Date && type == java.time.LocalDate.class)
+			return ((java.sql.Date) value).toLocalDate();
+		if (value instanceof Time && type == java.time.LocalTime.class)
+			return ((Time) value).toLocalTime();
+		if (value instanceof String && type.isEnum())
+			return Enum.valueOf((Class<Enum>) type, (String) value);
+		if (type == String.class)
+			return value.toString();
+
+		// Let the driver convert other types (JDBC 4.1).
+		return resultSet.getObject(columnIndex, type);
+	}
+
+	private static Class<?> wrap(Class<?> type) {
+		return MethodType.methodType(type).wrap().returnType();
+	}
+
+	private static String normalizeName(String name) {
+		return name.replace("_", "").toLowerCase();
+	}
+
+	private static final class ColumnSetter {
+
+		private final BiConsumer<Object, Object> setter;
+
+		// Wrapped property type.
+		private final Class<?> type;
+
+		private ColumnSetter(BiConsumer<Object, Object> setter, Class<?> type) {
+			this.setter = setter;
+			this.type = type;
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package org.vaadin.natale.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Bounded map with least-recently-used eviction.<br>
+ * Eldest entries are evicted as soon as the entry count or the summed entry weight
+ * exceeds its limit. The most recently added entry is never evicted, even if it alone
+ * exceeds the weight limit.<br>
+ * All methods are synchronized, so the cache may be filled from background threads.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class LruCache<K, V> {
+
+	private final LinkedHashMap<K, WeightedValue<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	private final int maxEntries;
+
+	private final long maxWeight;
+
+	private final ToLongFunction<V> weigher;
+
+	private long totalWeight;
+
+	private BiConsumer<K, V> evictionListener;
+
+	/**
+	 * Creates a new LruCache bounded only by entry count.
+	 *
+	 * @param maxEntries maximum number of entries.
+	 */
+	public LruCache(int maxEntries) {
+		this(maxEntries, Long.MAX_VALUE, value -> 0);
+	}
+
+	/**
+	 * Creates a new LruCache bounded by entry count and summed entry weight.
+	 *
+	 * @param maxEntries maximum number of entries.
+	 * @param maxWeight  maximum summed weight of all entries (for example, estimated bytes).
+	 * @param weigher    function to compute the weight of a single value.
+	 */
+	public LruCache(int maxEntries, long maxWeight, ToLongFunction<V> weigher) {
+		if (maxEntries < 1)
+			throw new IllegalArgumentException("LruCache must allow at least one entry, but maxEntries = " + maxEntries);
+
+		this.maxEntries = maxEntries;
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+	}
+
+	/**
+	 * Set a listener, that is called for each evicted entry.<br>
+	 * It isn't called for entries, that are removed or cleared explicitly.
+	 *
+	 * @param evictionListener consumer of evicted key and value.
+	 * @return current LruCache
+	 */
+	public synchronized LruCache<K, V> withEvictionListener(BiConsumer<K, V> evictionListener) {
+		this.evictionListener = evictionListener;
+		return this;
+	}
+
+	/**
+	 * Get the value by key and mark it as recently used.
+	 *
+	 * @param key key to look up.
+	 * @return cached value, or {@code null} if there is no such key.
+	 */
+	public synchronized V get(K key) {
+		WeightedValue<V> entry = entries.get(key);
+		return entry == null ? null : entry.value;
+	}
+
+	/**
+	 * Checks the key presence without changing the eviction order.
+	 *
+	 * @param key key to check.
+	 * @return {@code true} if the cache holds a value for the key.
+	 */
+	public synchronized boolean containsKey(K key) {
+		return entries.containsKey(key);
+	}
+
+	public synchronized void put(K key, V value) {
+		WeightedValue<V> entry = new WeightedValue<>(value, weigher.applyAsLong(value));
+		WeightedValue<V> previous = entries.put(key, entry);
+		if (previous != null)
+			totalWeight -= previous.weight;
+		totalWeight += entry.weight;
+
+		evict();
+	}
+
+	public synchronized V remove(K key) {
+		WeightedValue<V> previous = entries.remove(key);
+		if (previous == null)
+			return null;
+
+		totalWeight -= previous.weight;
+		return previous.value;
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		totalWeight = 0;
+	}
+
+	/**
+	 * Perform the action for each entry, without marking entries as recently used.<br>
+	 * Values may be modified in place, but their weights aren't recomputed.
+	 *
+	 * @param action action for key and value.
+	 */
+	public synchronized void forEach(BiConsumer<K, V> action) {
+		entries.forEach((key, weightedValue) -> action.accept(key, weightedValue.value));
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return summed weight of all cached values.
+	 */
+	public synchronized long getWeight() {
+		return totalWeight;
+	}
+
+	private void evict() {
+		Iterator<Map.Entry<K, WeightedValue<V>>> iterator = entries.entrySet().iterator();
+		while (entries.size() > 1 && (entries.size() > maxEntries || totalWeight > maxWeight)) {
+			Map.Entry<K, WeightedValue<V>> eldest = iterator.next();
+			totalWeight -= eldest.getValue().weight;
+			iterator.remove();
+			if (evictionListener != null)
+				evictionListener.accept(eldest.getKey(), eldest.getValue().value);
+		}
+	}
+
+	private static final class WeightedValue<V> {
+
+		private final V value;
+
+		private final long weight;
+
+		private WeightedValue(V value, long weight) {
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+}
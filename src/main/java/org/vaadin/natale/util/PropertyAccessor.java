@@ -0,0 +1,113 @@
+package org.vaadin.natale.util;
+
+import org.apache.log4j.Logger;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import static org.vaadin.natale.util.PropertyNameFormatter.toUpperFirstCharacter;
+
+/**
+ * Compiled getter of a (nested) property.<br>
+ * Unlike {@link ReflectionUtil#getPropertyValueByName(String, Object)}, getters are looked up
+ * only once per bean class and invoked through generated functions instead of reflection.
+ * <p>
+ * Accessors are cached, so {@link #of(String)} returns the same instance for the same property name.
+ */
+public final class PropertyAccessor {
+
+	private static final Logger logger = Logger.getLogger(PropertyAccessor.class);
+
+	private static final Map<String, PropertyAccessor> accessors = new ConcurrentHashMap<>();
+
+	private final String propertyName;
+
+	// Accessor of the rest of a nested property name, or null.
+	private final PropertyAccessor nextAccessor;
+
+	private final Map<Class<?>, Function<Object, Object>> getters = new ConcurrentHashMap<>();
+
+	private PropertyAccessor(String propertyName, PropertyAccessor nextAccessor) {
+		this.propertyName = propertyName;
+		this.nextAccessor = nextAccessor;
+	}
+
+	/**
+	 * Get accessor for specified property name.
+	 *
+	 * @param propertyName property name. <br>
+	 *                     For example: 'artistId'; 'artist.id' (nested property name)
+	 * @return property accessor.
+	 */
+	public static PropertyAccessor of(String propertyName) {
+		PropertyAccessor accessor = accessors.get(propertyName);
+		if (accessor != null)
+			return accessor;
+
+		int dotIndex = propertyName.indexOf(".");
+		accessor = dotIndex < 0 ?
+				new PropertyAccessor(propertyName, null)
+				: new PropertyAccessor(propertyName.substring(0, dotIndex), of(propertyName.substring(dotIndex + 1)));
+
+		PropertyAccessor previous = accessors.putIfAbsent(propertyName, accessor);
+		return previous == null ? accessor : previous;
+	}
+
+	/**
+	 * Get property value of the bean.
+	 *
+	 * @param bean bean to get value from.
+	 * @return property value, or {@code null} if bean or some nested property is {@code null}.
+	 */
+	public Object getValue(Object bean) {
+		if (bean == null)
+			return null;
+
+		Object value = getters.computeIfAbsent(bean.getClass(), this::compileGetter).apply(bean);
+		return nextAccessor == null ? value : nextAccessor.getValue(value);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Function<Object, Object> compileGetter(Class<?> clazz) {
+		Method getter = findGetter(clazz);
+		if (getter == null) {
+			logger.error("No getter method founded in class [" + clazz.getSimpleName() + "] for property [" + propertyName + "]");
+			return bean -> null;
+		}
+
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			MethodHandle handle = lookup.unreflect(getter);
+			CallSite callSite = LambdaMetafactory.metafactory(lookup,
+					"apply",
+					MethodType.methodType(Function.class),
+					MethodType.methodType(Object.class, Object.class),
+					handle,
+					handle.type().wrap());
+			return (Function<Object, Object>) callSite.getTarget().invoke();
+		} catch (Throwable e) {
+			// Not accessible for lambda generation (non public class, other class loader), so fall back to reflection.
+			getter.setAccessible(true);
+			return bean -> ReflectionUtil.invokeGetterMethodForObject(getter, bean);
+		}
+	}
+
+	private Method findGetter(Class<?> clazz) {
+		String capitalizedName = toUpperFirstCharacter(propertyName);
+		for (String prefix : new String[]{"get", "is"}) {
+			try {
+				return clazz.getMethod(prefix + capitalizedName);
+			} catch (NoSuchMethodException e) {
+				// Try next prefix.
+			}
+		}
+		return null;
+	}
+}
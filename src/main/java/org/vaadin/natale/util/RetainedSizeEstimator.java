@@ -0,0 +1,187 @@
+package org.vaadin.natale.util;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Estimates retained heap size of an object graph by walking its fields.<br>
+ * Sizes are computed for a 64-bit JVM with compressed references (12 bytes object header,
+ * 4 bytes reference, 8 bytes alignment). Class objects and enum constants are shared,
+ * so they aren't counted.
+ * <p>
+ * The walk stops at ORM and persistence infrastructure (like Hibernate sessions, referenced by
+ * persistent collections and lazy proxies, or JPA entity managers), as it's shared by all entities.
+ * <p>
+ * <b>Note: </b>the walk is bounded by a maximum number of visited objects,
+ * so graphs, that reference other large shared structures, aren't walked completely.
+ */
+public final class RetainedSizeEstimator {
+
+	private static final int OBJECT_HEADER_SIZE = 12;
+
+	private static final int ARRAY_HEADER_SIZE = 16;
+
+	private static final int REFERENCE_SIZE = 4;
+
+	private static final int ALIGNMENT = 8;
+
+	private static final int DEFAULT_MAX_VISITED_OBJECTS = 1000;
+
+	// Packages of shared infrastructure, objects of types from them (or implementing them) aren't walked.
+	// Persistent collections (org.hibernate.collection) are walked, as they hold the elements.
+	private static final String[] SHARED_PACKAGES = {
+			"org.hibernate.engine.", "org.hibernate.internal.", "org.hibernate.event.", "org.hibernate.proxy.",
+			"org.hibernate.persister.", "org.hibernate.type.", "org.hibernate.Session",
+			"javax.persistence.", "org.springframework."};
+
+	// Shallow size and reference fields by class.
+	private static final Map<Class<?>, ClassLayout> LAYOUTS = new ConcurrentHashMap<>();
+
+	private RetainedSizeEstimator() {
+	}
+
+	/**
+	 * Estimate retained size of the object and all objects reachable from it.
+	 *
+	 * @param object object to estimate.
+	 * @return estimated size in bytes.
+	 */
+	public static long estimate(Object object) {
+		return estimate(object, DEFAULT_MAX_VISITED_OBJECTS);
+	}
+
+	/**
+	 * Estimate retained size of the object and objects reachable from it.
+	 *
+	 * @param object            object to estimate.
+	 * @param maxVisitedObjects maximum number of objects to walk.
+	 * @return estimated size in bytes.
+	 */
+	public static long estimate(Object object, int maxVisitedObjects) {
+		Map<Object, Boolean> visited = new IdentityHashMap<>();
+		Deque<Object> pending = new ArrayDeque<>();
+		pending.push(object);
+
+		long size = 0;
+		while (!pending.isEmpty() && visited.size() < maxVisitedObjects) {
+			Object current = pending.pop();
+			if (current == null || current instanceof Class || current instanceof Enum || visited.put(current, Boolean.TRUE) != null)
+				continue;
+
+			Class<?> type = current.getClass();
+			if (current instanceof String) {
+				size += align(OBJECT_HEADER_SIZE + 12) + align(ARRAY_HEADER_SIZE + 2L * ((String) current).length());
+			} else if (type.isArray()) {
+				size += arraySize(current);
+				if (!type.getComponentType().isPrimitive()) {
+					for (Object element : (Object[]) current)
+						pending.push(element);
+				}
+			} else {
+				ClassLayout layout = LAYOUTS.computeIfAbsent(type, ClassLayout::new);
+				if (layout.shared)
+					continue;
+
+				size += layout.shallowSize;
+				for (Field field : layout.referenceFields) {
+					try {
+						pending.push(field.get(current));
+					} catch (IllegalAccessException e) {
+						// Field isn't readable, only its reference is counted.
+					}
+				}
+			}
+		}
+		return size;
+	}
+
+	private static long arraySize(Object array) {
+		Class<?> componentType = array.getClass().getComponentType();
+		int length = Array.getLength(array);
+		return align(ARRAY_HEADER_SIZE + (long) length * fieldSize(componentType));
+	}
+
+	private static int fieldSize(Class<?> type) {
+		if (type == long.class || type == double.class)
+			return 8;
+		if (type == int.class || type == float.class)
+			return 4;
+		if (type == short.class || type == char.class)
+			return 2;
+		if (type == byte.class || type == boolean.class)
+			return 1;
+		return REFERENCE_SIZE;
+	}
+
+	private static long align(long size) {
+		return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+	}
+
+	private static final class ClassLayout {
+
+		private final long shallowSize;
+
+		private final boolean shared;
+
+		private final List<Field> referenceFields = new ArrayList<>();
+
+		private ClassLayout(Class<?> type) {
+			this.shared = isSharedType(type);
+			if (shared) {
+				this.shallowSize = 0;
+				return;
+			}
+
+			long fieldsSize = 0;
+			for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+				for (Field field : current.getDeclaredFields()) {
+					if (Modifier.isStatic(field.getModifiers()))
+						continue;
+
+					fieldsSize += fieldSize(field.getType());
+					if (!field.getType().isPrimitive() && isAccessible(field))
+						referenceFields.add(field);
+				}
+			}
+			this.shallowSize = align(OBJECT_HEADER_SIZE + fieldsSize);
+		}
+
+		private static boolean isSharedType(Class<?> type) {
+			for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+				if (isSharedTypeName(current.getName()))
+					return true;
+				for (Class<?> implemented : current.getInterfaces()) {
+					if (isSharedType(implemented))
+						return true;
+				}
+			}
+			return false;
+		}
+
+		private static boolean isSharedTypeName(String name) {
+			for (String sharedPackage : SHARED_PACKAGES) {
+				if (name.startsWith(sharedPackage))
+					return true;
+			}
+			return false;
+		}
+
+		private static boolean isAccessible(Field field) {
+			try {
+				field.setAccessible(true);
+				return true;
+			} catch (RuntimeException e) {
+				// Inaccessible module or security manager: the referenced object isn't walked.
+				return false;
+			}
+		}
+	}
+}
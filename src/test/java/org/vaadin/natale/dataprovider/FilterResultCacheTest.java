@@ -0,0 +1,166 @@
+package org.vaadin.natale.dataprovider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.natale.filter.FilterMode;
+import org.vaadin.natale.filter.PropertyFilter;
+import org.vaadin.natale.filter.PropertyFilterKey;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class FilterResultCacheTest {
+
+	private static final PropertyFilterKey ADULTS = PropertyFilterKey.of(Collections.singleton(
+			PropertyFilter.build("age", 30).setFilterMode(FilterMode.GREATER_OR_EQUAL)));
+
+	private static final Comparator<Person> BY_NAME = Comparator.comparing(Person::getName);
+
+	private static final Comparator<Person> BY_AGE_DESCENDING = Comparator.comparing(Person::getAge).reversed();
+
+	// Item list of the provider, changed together with the cache.
+	private List<Person> items;
+
+	private FilterResultCache<Person> cache;
+
+	@Before
+	public void setUp() {
+		items = new ArrayList<>(Arrays.asList(
+				new Person("Dora", 35), new Person("Bob", 25), new Person("Anna", 30),
+				new Person("Carl", 52), new Person("Bob", 41), new Person("Eve", 19)));
+		cache = new FilterResultCache<>(10);
+
+		// Results are cached before the changes, so the changes update them in place.
+		assertResults();
+	}
+
+	@Test
+	public void appendedItemsAreInsertedInResults() {
+		append(new Person("Bob", 30));
+		append(new Person("Zoe", 12));
+		append(new Person("Abe", 60));
+
+		assertResults();
+	}
+
+	@Test
+	public void removedItemsShiftFollowingPositions() {
+		remove(items.get(0));
+		remove(items.get(items.size() - 1));
+		remove(items.get(2));
+
+		assertResults();
+	}
+
+	@Test
+	public void updatedItemsAreEvaluatedAgain() {
+		// Leaves the filter.
+		Person dora = items.get(0);
+		dora.setAge(20);
+		cache.itemUpdated(dora, dora);
+
+		// Enters the filter and moves in sort order.
+		Person eve = items.get(5);
+		eve.setAge(70);
+		eve.setName("Aaron");
+		cache.itemUpdated(eve, eve);
+
+		// Replaced by a new instance at the same position.
+		Person bob = items.get(4);
+		Person replacement = new Person("Bob", 31);
+		items.set(4, replacement);
+		cache.itemUpdated(bob, replacement);
+
+		assertResults();
+	}
+
+	@Test
+	public void mixedChangesMatchRecomputedResults() {
+		append(new Person("Carl", 33));
+		remove(items.get(1));
+
+		Person anna = items.get(1);
+		anna.setName("Zara");
+		cache.itemUpdated(anna, anna);
+
+		append(new Person("Anna", 44));
+		remove(items.get(0));
+
+		assertResults();
+	}
+
+	private void append(Person person) {
+		items.add(person);
+		cache.itemAppended(person);
+	}
+
+	private void remove(Person person) {
+		items.remove(person);
+		cache.itemRemoved(person);
+	}
+
+	// Compares cached results, updated in place, to results of a new cache over the current items.
+	private void assertResults() {
+		FilterResultCache<Person> recomputed = new FilterResultCache<>(10);
+
+		assertEquals(read(recomputed, recomputed.getResult(ADULTS, items)),
+				read(cache, cache.getResult(ADULTS, items)));
+		assertEquals(read(recomputed, recomputed.getSortedResult(ADULTS, items, "name", BY_NAME)),
+				read(cache, cache.getSortedResult(ADULTS, items, "name", BY_NAME)));
+		assertEquals(read(recomputed, recomputed.getSortedResult(ADULTS, items, "age desc", BY_AGE_DESCENDING)),
+				read(cache, cache.getSortedResult(ADULTS, items, "age desc", BY_AGE_DESCENDING)));
+
+		// Offset and limit are applied to the sorted result.
+		assertEquals(read(recomputed, recomputed.getSortedResult(ADULTS, items, "name", BY_NAME), 1, 2),
+				read(cache, cache.getSortedResult(ADULTS, items, "name", BY_NAME), 1, 2));
+	}
+
+	private static String read(FilterResultCache<Person> cache, FilterResultCache.Result result) {
+		return read(cache, result, 0, Integer.MAX_VALUE);
+	}
+
+	private static String read(FilterResultCache<Person> cache, FilterResultCache.Result result, int offset, int limit) {
+		return cache.stream(result, offset, limit)
+				.map(Person::toString)
+				.collect(Collectors.joining(", "));
+	}
+
+	public static class Person {
+
+		private String name;
+
+		private Integer age;
+
+		Person(String name, Integer age) {
+			this.name = name;
+			this.age = age;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public Integer getAge() {
+			return age;
+		}
+
+		public void setAge(Integer age) {
+			this.age = age;
+		}
+
+		@Override
+		public String toString() {
+			return name + " " + age;
+		}
+	}
+}
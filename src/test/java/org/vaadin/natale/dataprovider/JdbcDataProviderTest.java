@@ -0,0 +1,165 @@
+package org.vaadin.natale.dataprovider;
+
+import com.vaadin.data.provider.Query;
+import com.vaadin.data.provider.QuerySortOrder;
+import com.vaadin.shared.data.sort.SortDirection;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.natale.filter.FilterMode;
+import org.vaadin.natale.filter.PropertyFilter;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class JdbcDataProviderTest {
+
+	private JdbcDataSource dataSource;
+
+	// Keeps the in-memory database open between the connections of the provider.
+	private Connection keepAliveConnection;
+
+	private JdbcDataProvider<Person> provider;
+
+	@Before
+	public void setUp() throws SQLException {
+		dataSource = new JdbcDataSource();
+		dataSource.setURL("jdbc:h2:mem:jdbcDataProviderTest");
+		keepAliveConnection = dataSource.getConnection();
+		try (Statement statement = keepAliveConnection.createStatement()) {
+			statement.execute("CREATE TABLE person (id BIGINT PRIMARY KEY, first_name VARCHAR(64), age INT)");
+			statement.execute("INSERT INTO person VALUES "
+					+ "(1, 'Anna', 30), (2, 'Bob', 25), (3, 'anne', 41), (4, 'Carl', NULL), (5, 'Dora_x', 35), (6, 'Doraax', 52)");
+		}
+
+		provider = new JdbcDataProvider<>(dataSource, "person", Person.class).withFetchSize(2);
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		keepAliveConnection.close();
+	}
+
+	@Test
+	public void unfilteredRowsArePagedInSortOrder() {
+		assertEquals(6, provider.size(new Query<>()));
+		assertEquals("1, 2, 3", fetchIds(0, 3, "id", SortDirection.ASCENDING));
+		assertEquals("4, 5, 6", fetchIds(3, 3, "id", SortDirection.ASCENDING));
+		assertEquals("", fetchIds(6, 3, "id", SortDirection.ASCENDING));
+		assertEquals("6, 5", fetchIds(0, 2, "id", SortDirection.DESCENDING));
+	}
+
+	@Test
+	public void containsFilterIgnoresCase() {
+		provider.addPropertyFilter(PropertyFilter.build("firstName", "AN").setFilterMode(FilterMode.CONTAINS));
+
+		assertEquals(2, provider.size(new Query<>()));
+		assertEquals("1, 3", fetchIds(0, 10, "id", SortDirection.ASCENDING));
+	}
+
+	@Test
+	public void likeWildcardsInFilterValueAreEscaped() {
+		provider.addPropertyFilter(PropertyFilter.build("firstName", "a_x").setFilterMode(FilterMode.CONTAINS));
+
+		assertEquals("5", fetchIds(0, 10, "id", SortDirection.ASCENDING));
+	}
+
+	@Test
+	public void comparisonFiltersAreCombinedAndPassNullValues() {
+		provider.addPropertyFilter(PropertyFilter.build("age", 30).setFilterMode(FilterMode.GREATER_OR_EQUAL));
+		provider.addPropertyFilter(PropertyFilter.build("firstName", "bob").setFilterMode(FilterMode.NOT_EQUALS));
+
+		// Like PropertyFilter.testProperty(), rows with null values pass the filter.
+		assertEquals(5, provider.size(new Query<>()));
+		assertEquals("6, 3, 5", fetchIds(0, 3, "age", SortDirection.DESCENDING));
+		assertEquals("1, 4", fetchIds(3, 3, "age", SortDirection.DESCENDING));
+	}
+
+	@Test
+	public void orderingFilterComparesOriginalCase() {
+		provider.addPropertyFilter(PropertyFilter.build("firstName", "C").setFilterMode(FilterMode.GREATER_OR_EQUAL));
+
+		// Like String.compareTo(): lower case names are greater than upper case ones.
+		assertEquals("3, 4, 5, 6", fetchIds(0, 10, "id", SortDirection.ASCENDING));
+	}
+
+	@Test
+	public void filterChangesApplyToNextQuery() {
+		PropertyFilter<Integer> ageFilter = PropertyFilter.build("age", 40).setFilterMode(FilterMode.SMALLER);
+		provider.addPropertyFilter(ageFilter);
+		assertEquals("1, 2, 4, 5", fetchIds(0, 10, "id", SortDirection.ASCENDING));
+
+		ageFilter.setFilterValue(30);
+		assertEquals("2, 4", fetchIds(0, 10, "id", SortDirection.ASCENDING));
+
+		provider.removePropertyFilterByPropertyName("age");
+		assertEquals(6, provider.size(new Query<>()));
+	}
+
+	@Test
+	public void forEachItemReadsAllFilteredRowsInSortOrder() {
+		provider.addPropertyFilter(PropertyFilter.build("age", 30).setFilterMode(FilterMode.GREATER_OR_EQUAL));
+
+		List<QuerySortOrder> sortOrders = Collections.singletonList(new QuerySortOrder("age", SortDirection.DESCENDING));
+		List<String> ids = new ArrayList<>();
+		provider.forEachItem(new Query<>(0, 1, sortOrders, null, null), person -> ids.add(String.valueOf(person.getId())));
+
+		assertEquals("6, 3, 5, 1, 4", String.join(", ", ids));
+	}
+
+	@Test
+	public void aggregatesUseFilters() {
+		provider.addPropertyFilter(PropertyFilter.build("firstName", "dora").setFilterMode(FilterMode.CONTAINS));
+
+		assertEquals(87L, ((Number) provider.getAggregate("age", AggregateFunction.SUM)).longValue());
+		assertEquals(2L, ((Number) provider.getAggregate("age", AggregateFunction.COUNT)).longValue());
+	}
+
+	private String fetchIds(int offset, int limit, String sortedProperty, SortDirection direction) {
+		List<QuerySortOrder> sortOrders = Collections.singletonList(new QuerySortOrder(sortedProperty, direction));
+		return provider.fetch(new Query<>(offset, limit, sortOrders, null, null))
+				.map(person -> String.valueOf(person.getId()))
+				.collect(Collectors.joining(", "));
+	}
+
+	public static class Person {
+
+		private Long id;
+
+		private String firstName;
+
+		private Integer age;
+
+		public Long getId() {
+			return id;
+		}
+
+		public void setId(Long id) {
+			this.id = id;
+		}
+
+		public String getFirstName() {
+			return firstName;
+		}
+
+		public void setFirstName(String firstName) {
+			this.firstName = firstName;
+		}
+
+		public Integer getAge() {
+			return age;
+		}
+
+		public void setAge(Integer age) {
+			this.age = age;
+		}
+	}
+}
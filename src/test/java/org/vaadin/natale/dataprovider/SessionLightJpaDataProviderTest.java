@@ -0,0 +1,168 @@
+package org.vaadin.natale.dataprovider;
+
+import com.vaadin.data.provider.Query;
+import com.vaadin.data.provider.QuerySortOrder;
+import com.vaadin.shared.data.sort.SortDirection;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class SessionLightJpaDataProviderTest {
+
+	// Backend of all repository instances, so a located repository sees the same entities.
+	private static final Map<Long, Person> persons = new TreeMap<>();
+
+	private static int idLoads;
+
+	private static int saves;
+
+	@Before
+	public void setUp() {
+		persons.clear();
+		for (long id = 1; id <= 5; ++id)
+			persons.put(id, new Person(id, "Person " + id));
+		idLoads = 0;
+		saves = 0;
+	}
+
+	@Test
+	public void serializationRoundTripKeepsIdsAndRebindsRepository() throws Exception {
+		SessionLightJpaDataProvider<Person, Long> provider = new SessionLightJpaDataProvider<>(
+				SessionLightJpaDataProviderTest::locateRepository, PersonRepository::findAllIds, Person::getId);
+		assertEquals(5, provider.size(new Query<>()));
+		assertEquals(1, idLoads);
+
+		SessionLightJpaDataProvider<Person, Long> copy = roundTrip(provider);
+
+		// Ids are restored from the serialized form, entities are loaded by the located repository.
+		assertEquals(5, copy.size(new Query<>()));
+		assertEquals(1, idLoads);
+		List<Person> window = copy.fetch(new Query<>(1, 3, Collections.emptyList(), null, null)).collect(Collectors.toList());
+		assertEquals("Person 2, Person 3, Person 4", window.stream().map(Person::getName).collect(Collectors.joining(", ")));
+
+		Person changed = window.get(0);
+		changed.setName("Changed");
+		copy.refreshItem(changed);
+		assertEquals(1, saves);
+		assertEquals("Changed", persons.get(2L).getName());
+	}
+
+	@Test
+	public void serializationRoundTripWithoutLoadedIds() throws Exception {
+		SessionLightJpaDataProvider<Person, Long> provider = new SessionLightJpaDataProvider<>(
+				SessionLightJpaDataProviderTest::locateRepository, PersonRepository::findAllIds, Person::getId)
+				.withEntityCacheSize(2);
+
+		SessionLightJpaDataProvider<Person, Long> copy = roundTrip(provider);
+		assertEquals(5, copy.size(new Query<>()));
+		assertEquals(1, idLoads);
+	}
+
+	@Test
+	public void sizeReusesIdsOfSortedFetch() {
+		SessionLightJpaDataProvider<Person, Long> provider = new SessionLightJpaDataProvider<>(
+				SessionLightJpaDataProviderTest::locateRepository, PersonRepository::findAllIds, Person::getId);
+		List<QuerySortOrder> sortOrders = Collections.singletonList(new QuerySortOrder("name", SortDirection.DESCENDING));
+
+		// Like DataCommunicator: sorted fetch, then size without sort orders.
+		for (int i = 0; i < 3; ++i) {
+			provider.fetch(new Query<>(0, 2, sortOrders, null, null)).count();
+			assertEquals(5, provider.size(new Query<>()));
+		}
+		assertEquals(1, idLoads);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T roundTrip(T object) throws IOException, ClassNotFoundException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(object);
+		}
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			return (T) in.readObject();
+		}
+	}
+
+	// Creates a new repository instance each time, like a lookup in the application context after deserialization.
+	@SuppressWarnings("unchecked")
+	private static PersonRepository locateRepository() {
+		return (PersonRepository) Proxy.newProxyInstance(PersonRepository.class.getClassLoader(),
+				new Class<?>[]{PersonRepository.class}, (proxy, method, args) -> {
+					switch (method.getName()) {
+						case "findAllIds":
+							++idLoads;
+							return new ArrayList<>(persons.keySet());
+						case "findAll":
+							List<Person> found = new ArrayList<>();
+							for (Long id : (Iterable<Long>) args[0]) {
+								if (persons.containsKey(id))
+									found.add(persons.get(id).copy());
+							}
+							return found;
+						case "save":
+							++saves;
+							Person person = (Person) args[0];
+							persons.put(person.getId(), person.copy());
+							return person;
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						case "equals":
+							return proxy == args[0];
+						case "toString":
+							return "PersonRepository";
+						default:
+							throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+	interface PersonRepository extends JpaRepository<Person, Long> {
+
+		List<Long> findAllIds(Sort sort);
+	}
+
+	public static class Person implements Serializable {
+
+		private final Long id;
+
+		private String name;
+
+		Person(Long id, String name) {
+			this.id = id;
+			this.name = name;
+		}
+
+		public Long getId() {
+			return id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		Person copy() {
+			return new Person(id, name);
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package org.vaadin.natale.filter;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PropertyFilterKeyTest {
+
+	private static final List<Item> items = Arrays.asList(
+			new Item("apple"), new Item("Zebra"), new Item("Nina"), new Item("Mango"), new Item("kiwi"), new Item(null));
+
+	@Test
+	public void orderingModesCompareOriginalValue() {
+		for (FilterMode mode : Arrays.asList(FilterMode.GREATER, FilterMode.SMALLER, FilterMode.GREATER_OR_EQUAL, FilterMode.SMALLER_OR_EQUAL)) {
+			PropertyFilter<String> filter = PropertyFilter.build("name", "M").setFilterMode(mode);
+			assertSameItems(filter);
+		}
+	}
+
+	@Test
+	public void textMatchingModesIgnoreCase() {
+		for (FilterMode mode : Arrays.asList(FilterMode.CONTAINS, FilterMode.NOT_CONTAINS, FilterMode.EQUALS, FilterMode.NOT_EQUALS)) {
+			PropertyFilter<String> filter = PropertyFilter.build("name", "MANGO").setFilterMode(mode);
+			assertSameItems(filter);
+			assertSameItems(PropertyFilter.build("name", "MANGO").setFilterMode(mode).setIgnoreCase(false));
+		}
+	}
+
+	@Test
+	public void keysOfOrderingModesDependOnCase() {
+		PropertyFilterKey upper = PropertyFilterKey.of(Collections.singleton(PropertyFilter.build("name", "M").setFilterMode(FilterMode.GREATER)));
+		PropertyFilterKey lower = PropertyFilterKey.of(Collections.singleton(PropertyFilter.build("name", "m").setFilterMode(FilterMode.GREATER)));
+		assertNotEquals(upper, lower);
+		assertTrue(upper.test(new Item("Nina")));
+		assertFalse(lower.test(new Item("Nina")));
+	}
+
+	@Test
+	public void keysOfTextMatchingModesIgnoreCase() {
+		PropertyFilterKey upper = PropertyFilterKey.of(Collections.singleton(PropertyFilter.build("name", "AN").setFilterMode(FilterMode.CONTAINS)));
+		PropertyFilterKey lower = PropertyFilterKey.of(Collections.singleton(PropertyFilter.build("name", "an").setFilterMode(FilterMode.CONTAINS)));
+		assertEquals(upper, lower);
+		assertEquals(upper.hashCode(), lower.hashCode());
+	}
+
+	private static void assertSameItems(PropertyFilter<String> filter) {
+		PropertyFilterKey key = PropertyFilterKey.of(Collections.singleton(filter));
+		String expected = items.stream().filter(item -> filter.testProperty(item.getName())).map(Item::toString).collect(Collectors.joining(", "));
+		String actual = items.stream().filter(key::test).map(Item::toString).collect(Collectors.joining(", "));
+		assertEquals(filter.getMode() + (filter.isIgnoreCase() ? " ignoreCase" : ""), expected, actual);
+	}
+
+	public static class Item {
+
+		private final String name;
+
+		Item(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public String toString() {
+			return String.valueOf(name);
+		}
+	}
+}